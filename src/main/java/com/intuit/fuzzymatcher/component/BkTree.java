@@ -0,0 +1,144 @@
+package com.intuit.fuzzymatcher.component;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * BK-tree of the distinct token values of an EDIT_DISTANCE ElementClassification, to look up the values within a
+ * Levenshtein distance of a query.
+ * <p>
+ * Each node holds a value, and its children are keyed by their distance to it. By the triangle inequality, a value
+ * within maxDistance of the query can only be under a child whose key is within maxDistance of the distance between
+ * the query and the node. So a lookup with a small maxDistance only compares the query with a small part of the
+ * values, instead of all of them.
+ * <p>
+ * The nodes are held in arrays, each child linked to its next sibling. Values are compared by their String form.
+ * The tree is not thread safe.
+ */
+class BkTree {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] values = new Object[INITIAL_CAPACITY];
+
+    private String[] texts = new String[INITIAL_CAPACITY];
+
+    // Distance to the parent node, by node
+    private int[] distances = new int[INITIAL_CAPACITY];
+
+    private int[] firstChildren = new int[INITIAL_CAPACITY];
+
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * @param value the value to add
+     * @return false if the value is already in the tree
+     */
+    boolean add(Object value) {
+        String text = String.valueOf(value);
+        if (size == 0) {
+            append(value, text, 0);
+            return true;
+        }
+        int node = 0;
+        while (true) {
+            int distance = getDistance(texts[node], text);
+            if (distance == 0) {
+                return false;
+            }
+            int child = firstChildren[node];
+            while (child >= 0 && distances[child] != distance) {
+                child = nextSiblings[child];
+            }
+            if (child < 0) {
+                int added = append(value, text, distance);
+                nextSiblings[added] = firstChildren[node];
+                firstChildren[node] = added;
+                return true;
+            }
+            node = child;
+        }
+    }
+
+    /**
+     * Passes every value within maxDistance of the query to the consumer
+     *
+     * @param query       the value to look up
+     * @param maxDistance the max Levenshtein distance
+     * @param consumer    receives the values found
+     */
+    void forEach(Object query, int maxDistance, Consumer<Object> consumer) {
+        if (size == 0) {
+            return;
+        }
+        String text = String.valueOf(query);
+        int[] stack = new int[INITIAL_CAPACITY];
+        int top = 0;
+        stack[top++] = 0;
+        while (top > 0) {
+            int node = stack[--top];
+            int distance = getDistance(texts[node], text);
+            if (distance <= maxDistance) {
+                consumer.accept(values[node]);
+            }
+            for (int child = firstChildren[node]; child >= 0; child = nextSiblings[child]) {
+                if (Math.abs(distances[child] - distance) <= maxDistance) {
+                    if (top == stack.length) {
+                        stack = Arrays.copyOf(stack, top * 2);
+                    }
+                    stack[top++] = child;
+                }
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return the Levenshtein distance of the two Strings, computed with two rows of the distance matrix
+     */
+    static int getDistance(String a, String b) {
+        if (a.length() < b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char c = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (c == b.charAt(j - 1) ? 0 : 1);
+                current[j] = Math.min(substitution, Math.min(previous[j], current[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private int append(Object value, String text, int distance) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+            texts = Arrays.copyOf(texts, size * 2);
+            distances = Arrays.copyOf(distances, size * 2);
+            firstChildren = Arrays.copyOf(firstChildren, size * 2);
+            nextSiblings = Arrays.copyOf(nextSiblings, size * 2);
+        }
+        values[size] = value;
+        texts[size] = text;
+        distances[size] = distance;
+        firstChildren[size] = -1;
+        nextSiblings[size] = -1;
+        return size++;
+    }
+}
@@ -0,0 +1,110 @@
+package com.intuit.fuzzymatcher.component;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * The number of matching tokens of each candidate of a probe, by element ordinal.
+ * <p>
+ * The counts are held in an int array indexed by ordinal, and the ordinals counted so far in a list of touched slots.
+ * Incrementing a count neither boxes nor allocates, and the array is reset by clearing the touched slots only, so the
+ * same instance is reused by the probes of an ElementMatch. The arrays grow with the largest ordinal of its index.
+ * <p>
+ * Not thread safe, ElementMatch lends each instance from a small pool to a single probe at a time.
+ */
+class CandidateCounts {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Matching token count by ordinal, 0 for the ordinals not counted
+    private int[] counts = new int[INITIAL_CAPACITY];
+
+    // The ordinals with a count, in the order they were first counted
+    private int[] touched = new int[INITIAL_CAPACITY];
+
+    private int size;
+
+    /**
+     * Adds a matching token to a candidate
+     *
+     * @param ordinal the ordinal of the candidate
+     */
+    void increment(int ordinal) {
+        if (ordinal >= counts.length) {
+            counts = Arrays.copyOf(counts, Math.max(ordinal + 1, counts.length * 2));
+        }
+        if (counts[ordinal]++ == 0) {
+            if (size == touched.length) {
+                touched = Arrays.copyOf(touched, size * 2);
+            }
+            touched[size++] = ordinal;
+        }
+    }
+
+    /**
+     * Adds a matching token to a candidate already counted
+     *
+     * @param ordinal the ordinal of the candidate
+     * @return false if the ordinal is not a candidate
+     */
+    boolean incrementIfPresent(int ordinal) {
+        if (ordinal >= counts.length || counts[ordinal] == 0) {
+            return false;
+        }
+        counts[ordinal]++;
+        return true;
+    }
+
+    /**
+     * @return the number of matching tokens of the candidate, 0 if it is not a candidate
+     */
+    int get(int ordinal) {
+        return ordinal < counts.length ? counts[ordinal] : 0;
+    }
+
+    /**
+     * @return the ordinal of the candidate at an index, between 0 and size
+     */
+    int getOrdinal(int index) {
+        return touched[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Drops the candidates matching the predicate
+     *
+     * @param predicate tests the ordinal of each candidate
+     */
+    void removeIf(IntPredicate predicate) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int ordinal = touched[i];
+            if (predicate.test(ordinal)) {
+                counts[ordinal] = 0;
+            } else {
+                touched[kept++] = ordinal;
+            }
+        }
+        size = kept;
+    }
+
+    /**
+     * @return the ordinals of the candidates
+     */
+    int[] toArray() {
+        return Arrays.copyOf(touched, size);
+    }
+
+    /**
+     * Resets the count of every candidate
+     */
+    void clear() {
+        for (int i = 0; i < size; i++) {
+            counts[touched[i]] = 0;
+        }
+        size = 0;
+    }
+}
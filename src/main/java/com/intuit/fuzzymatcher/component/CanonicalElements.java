@@ -0,0 +1,162 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Document;
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.ElementClassification;
+import com.intuit.fuzzymatcher.domain.Match;
+import com.intuit.fuzzymatcher.domain.MatchType;
+import com.intuit.fuzzymatcher.domain.Token;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Shared store of the distinct values of the elements, for the valueCache MatchOption.
+ * <p>
+ * Elements are keyed by their ElementClassification and pre-processed value, along with the tokenizer function, match
+ * type, threshold, neighborhoodRange and maxEditDistance, which all decide their tokens and matches. The first element
+ * of a key is tokenized, and the other elements of the key get a copy of its token values, so each distinct value is
+ * tokenized once.
+ * <p>
+ * The element matches of a key are kept by index, along with the size of the index they were found in. Another element
+ * of the key probing the same index at the same size gets the same matches, re-mapped to it and filtered by its own
+ * candidate filter, without looking up its tokens. So the matches are the same as probing each element, but each
+ * distinct value is only probed once while the index does not change, like when probing a MatchIndex or matching with
+ * probeOnly. The tokens of the elements reusing the matches do not add to the MatchStatistics.
+ * <p>
+ * The store is thread safe, and lives for a single match.
+ */
+class CanonicalElements {
+
+    private final Map<Key, Canonical> canonicals = new ConcurrentHashMap<>();
+
+    /**
+     * Gives the pre-processed elements of the document the tokens of their canonical element
+     *
+     * @param document the document to tokenize
+     */
+    void tokenize(Document document) {
+        document.getPreProcessedElement().forEach(this::tokenize);
+    }
+
+    private void tokenize(Element element) {
+        Canonical canonical = getCanonical(element);
+        List<Object> tokenValues = canonical.tokenValues;
+        if (tokenValues == null) {
+            List<Token> tokens = element.getTokens();
+            tokenValues = new ArrayList<>(tokens.size());
+            for (Token token : tokens) {
+                tokenValues.add(token.getValue());
+            }
+            canonical.tokenValues = tokenValues;
+            return;
+        }
+        List<Token> tokens = new ArrayList<>(tokenValues.size());
+        for (Object tokenValue : tokenValues) {
+            tokens.add(new Token<>(tokenValue, element));
+        }
+        element.setTokens(tokens);
+    }
+
+    /**
+     * Probes an element, or re-maps the matches of its canonical element when the index has not changed since
+     *
+     * @param elementMatch    the index to probe
+     * @param element         the element to match
+     * @param candidateFilter the indexed elements to consider as candidates, null for all of them
+     * @return the set of element matches above the element threshold
+     */
+    Set<Match<Element>> probe(ElementMatch elementMatch, Element element, Predicate<Element> candidateFilter) {
+        Canonical canonical = getCanonical(element);
+        int indexSize = elementMatch.getIndexSize();
+        Probe probe = canonical.probes.get(elementMatch);
+        if (probe == null || probe.indexSize != indexSize) {
+            probe = new Probe(indexSize, elementMatch.probeElement(element));
+            canonical.probes.put(elementMatch, probe);
+            if (candidateFilter == null) {
+                return probe.matches;
+            }
+        }
+
+        Set<Match<Element>> matches = new HashSet<>();
+        for (Match<Element> match : probe.matches) {
+            if (candidateFilter == null || candidateFilter.test(match.getMatchedWith())) {
+                matches.add(match.getData() == element
+                        ? match
+                        : new Match<>(element, match.getMatchedWith(), match.getResult()));
+            }
+        }
+        return matches;
+    }
+
+    private Canonical getCanonical(Element element) {
+        return canonicals.computeIfAbsent(new Key(element), key -> new Canonical());
+    }
+
+    private static class Canonical {
+
+        volatile List<Object> tokenValues;
+
+        final Map<ElementMatch, Probe> probes = new ConcurrentHashMap<>();
+    }
+
+    private static class Probe {
+
+        final int indexSize;
+
+        final Set<Match<Element>> matches;
+
+        Probe(int indexSize, Set<Match<Element>> matches) {
+            this.indexSize = indexSize;
+            this.matches = matches;
+        }
+    }
+
+    private static class Key {
+
+        final ElementClassification elementClassification;
+
+        final Object preProcessedValue;
+
+        final Function tokenizerFunction;
+
+        final MatchType matchType;
+
+        final double threshold;
+
+        final double neighborhoodRange;
+
+        final int maxEditDistance;
+
+        Key(Element element) {
+            this.elementClassification = element.getElementClassification();
+            this.preProcessedValue = element.getPreProcessedValue();
+            this.tokenizerFunction = element.getTokenizerFunction();
+            this.matchType = element.getMatchType();
+            this.threshold = element.getThreshold();
+            this.neighborhoodRange = element.getNeighborhoodRange();
+            this.maxEditDistance = element.getMaxEditDistance();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Double.compare(key.threshold, threshold) == 0 &&
+                    Double.compare(key.neighborhoodRange, neighborhoodRange) == 0 &&
+                    maxEditDistance == key.maxEditDistance &&
+                    Objects.equals(elementClassification, key.elementClassification) &&
+                    Objects.equals(preProcessedValue, key.preProcessedValue) &&
+                    tokenizerFunction == key.tokenizerFunction &&
+                    matchType == key.matchType;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(elementClassification, preProcessedValue, matchType);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.intuit.fuzzymatcher.component;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Disjoint sets of ordinals, to group the documents linked by a chain of matches.
+ * <p>
+ * Each ordinal points to a parent, and the root of a set points to itself. A union links the root with the larger
+ * ordinal under the other one with a single compare and set, and finding a root halves the path it walks, so the
+ * unions of all the matches take near linear time, without recursion.
+ * <p>
+ * The parents are held in an atomic int array, so union and find can be called from multiple threads. A failed link
+ * is retried from the new roots, and a failed path halving is simply skipped, as it is only a shortcut.
+ */
+class DisjointSet {
+
+    private final AtomicIntegerArray parents;
+
+    /**
+     * @param size the number of ordinals, each in a set of its own
+     */
+    DisjointSet(int size) {
+        this.parents = new AtomicIntegerArray(size);
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            parents.set(ordinal, ordinal);
+        }
+    }
+
+    /**
+     * @param ordinal an ordinal
+     * @return the root of the set of the ordinal, the smallest ordinal of the set
+     */
+    int find(int ordinal) {
+        while (true) {
+            int parent = parents.get(ordinal);
+            if (parent == ordinal) {
+                return ordinal;
+            }
+            int grandParent = parents.get(parent);
+            if (grandParent != parent) {
+                parents.compareAndSet(ordinal, parent, grandParent);
+            }
+            ordinal = grandParent;
+        }
+    }
+
+    /**
+     * Merges the sets of two ordinals
+     *
+     * @param ordinal an ordinal
+     * @param other   the other ordinal
+     */
+    void union(int ordinal, int other) {
+        while (true) {
+            int root = find(ordinal);
+            int otherRoot = find(other);
+            if (root == otherRoot) {
+                return;
+            }
+            if (root < otherRoot ? parents.compareAndSet(otherRoot, otherRoot, root)
+                    : parents.compareAndSet(root, root, otherRoot)) {
+                return;
+            }
+        }
+    }
+
+    int size() {
+        return parents.length();
+    }
+}
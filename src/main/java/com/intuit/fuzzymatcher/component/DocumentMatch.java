@@ -2,42 +2,526 @@ package com.intuit.fuzzymatcher.component;
 
 
 import com.intuit.fuzzymatcher.domain.*;
+import com.intuit.fuzzymatcher.function.ScoringFunction;
 import org.apache.commons.lang3.BooleanUtils;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * <p>
  * Starts the Matching process by element level matching and aggregates the results back
  * This uses the ScoringFunction defined at each Document to get the aggregated Document score for matched Elements
+ * <p>
+ * Documents are only matched with documents sharing a blocking key. When matching documents, each blocking key has an
+ * index of its own, so a document is only compared with the documents of its blocks. A pair of documents sharing more
+ * than one block is only matched in the first of them. When indexing and probing documents, the documents of all the
+ * blocks are in the same index, and the element matches not sharing a block with the probed document are dropped before
+ * the document score.
  */
 public class DocumentMatch {
 
+    private static final int MIN_CHUNK_SIZE = 64;
+
     private final ElementMatch elementMatch;
 
+    private final MatchOptions matchOptions;
+
+    private final MatchStatistics matchStatistics;
+
+    // Only emits the match of each pair from the document matched last, instead of both directions
+    private final boolean pairsOnly;
+
+    // The index of each blocking key in matchDocuments, documents without a blocking key use the elementMatch
+    private final Map<String, ElementMatch> blockMatches = new ConcurrentHashMap<>();
+
     public DocumentMatch() {
-        this.elementMatch = new ElementMatch();
+        this(MatchOptions.defaults(), new MatchStatistics());
+    }
+
+    public DocumentMatch(MatchOptions matchOptions, MatchStatistics matchStatistics) {
+        this(new TokenRepo(matchOptions), matchOptions, matchStatistics);
+    }
+
+    DocumentMatch(TokenIndex tokenIndex, MatchOptions matchOptions, MatchStatistics matchStatistics) {
+        this(tokenIndex, matchOptions, matchStatistics, false);
     }
 
     /**
-     * Executes matching of a document stream
+     * @param pairsOnly emit each matching pair of documents once, see Match.reversed for the other direction
+     */
+    DocumentMatch(MatchOptions matchOptions, MatchStatistics matchStatistics, boolean pairsOnly) {
+        this(new TokenRepo(matchOptions), matchOptions, matchStatistics, pairsOnly);
+    }
+
+    private DocumentMatch(TokenIndex tokenIndex, MatchOptions matchOptions, MatchStatistics matchStatistics,
+                          boolean pairsOnly) {
+        this.elementMatch = new ElementMatch(tokenIndex, matchOptions, matchStatistics);
+        this.matchOptions = matchOptions;
+        this.matchStatistics = matchStatistics;
+        this.pairsOnly = pairsOnly;
+    }
+
+    public MatchStatistics getMatchStatistics() {
+        return matchStatistics;
+    }
+
+    /**
+     * Executes matching of a document stream.
+     * In probeOnly mode, the source documents are matched but not indexed
+     * In parallel mode, the stream is consumed upfront, and the matches are returned in the order of the documents
+     * With collapseDuplicates, the stream is consumed upfront, and only the first of each group of exact duplicates
+     * is matched
      *
      * @param documents Stream of Document objects
      * @return Stream of Match of Document type objects
      */
     public Stream<Match<Document>> matchDocuments(Stream<Document> documents) {
+        if (matchOptions.isCollapseDuplicates()) {
+            return matchCollapsedDocuments(documents.collect(Collectors.toList()));
+        }
+        return matchDistinctDocuments(documents);
+    }
+
+    private Stream<Match<Document>> matchDistinctDocuments(Stream<Document> documents) {
+        if (matchOptions.isParallel()) {
+            return matchDocumentsInParallel(documents.collect(Collectors.toList()));
+        }
 
-        Stream<Match<Document>> documentMatch = documents.flatMap(document -> {
-            Set<Element> elements = document.getPreProcessedElement();
-            Set<Match<Element>> eleMatches = elements.stream()
-                    .flatMap(element -> elementMatch.matchElement(element).stream())
-                    .collect(Collectors.toSet());
+        CanonicalElements canonicalElements = newCanonicalElements();
+        return documents.flatMap(document -> matchDocument(document, canonicalElements));
+    }
+
+    /**
+     * Matches a single document with the documents matched before it, one after another like matchDocuments in the
+     * sequential mode, whatever the parallel and collapseDuplicates options. The document is indexed as the returned
+     * stream is consumed, so it must be consumed before the next document is matched
+     *
+     * @param document the document to match
+     * @return Stream of Match of Document type objects
+     */
+    Stream<Match<Document>> matchDocument(Document document) {
+        return matchDocument(document, null);
+    }
+
+    private Stream<Match<Document>> matchDocument(Document document, CanonicalElements canonicalElements) {
+        tokenize(canonicalElements, document);
+        boolean probeOnly = matchOptions.isProbeOnly() && BooleanUtils.isTrue(document.isSource());
+        return getBlockMatches(document).flatMap(blockMatch -> {
+            ElementMatch blockElementMatch = blockMatch.getValue();
+            Predicate<Element> blockFilter = getBlockFilter(document, blockMatch.getKey());
+            Consumer<Element> indexer = probeOnly ? element -> { } : blockElementMatch::indexElement;
+            if (BooleanUtils.isFalse(document.isSource())) {
+                document.getPreProcessedElement().forEach(indexer);
+                return Stream.empty();
+            }
+            Set<Match<Element>> eleMatches = probeElements(document, (element, candidateFilter) ->
+                    probeElement(blockElementMatch, element, and(blockFilter, candidateFilter), canonicalElements),
+                    indexer);
             return documentThresholdMatching(document, eleMatches);
         });
+    }
+
+    /**
+     * Groups the documents which are exact duplicates, see getFingerprint, and only matches the first document of each
+     * group. The matches of a first document are then expanded to every document of its group, and to every document
+     * of the group it matched with, with the same score. The documents of a group are matched with each other, like
+     * they would be in matchDocuments, with the score of all their elements matching with a score of 1.0
+     */
+    private Stream<Match<Document>> matchCollapsedDocuments(List<Document> documents) {
+        Map<List<Object>, List<Document>> groups = new LinkedHashMap<>();
+        documents.forEach(document ->
+                groups.computeIfAbsent(getFingerprint(document), key -> new ArrayList<>()).add(document));
+        Map<Document, List<Document>> groupByFirst = new IdentityHashMap<>(groups.size());
+        groups.values().forEach(group -> groupByFirst.put(group.get(0), group));
+
+        Stream<Match<Document>> expanded = matchDistinctDocuments(groups.values().stream().map(group -> group.get(0)))
+                .flatMap(match -> {
+                    List<Document> group = groupByFirst.get(match.getData());
+                    List<Document> matchedGroup = groupByFirst.get(match.getMatchedWith());
+                    if (group.size() == 1 && matchedGroup.size() == 1) {
+                        return Stream.of(match);
+                    }
+                    return group.stream().flatMap(document -> matchedGroup.stream().map(matchedWith ->
+                            new Match<>(document, matchedWith, match.getResult())));
+                });
+        return Stream.concat(expanded, groups.values().stream()
+                .filter(group -> group.size() > 1)
+                .flatMap(this::matchDuplicates));
+    }
+
+    /**
+     * @return the matches of the documents of a group of exact duplicates with each other, each document being matched
+     * with the documents before it, none if the documents would not be matched with each other
+     */
+    private Stream<Match<Document>> matchDuplicates(List<Document> group) {
+        Document first = group.get(0);
+        if (first.getPreProcessedElement().isEmpty() || BooleanUtils.isFalse(first.isSource())
+                || (matchOptions.isProbeOnly() && BooleanUtils.isTrue(first.isSource()))) {
+            return Stream.empty();
+        }
+        List<Score> childScores = new ArrayList<>();
+        first.getPreProcessedElement().forEach(element ->
+                childScores.add(new Match<Element>(element, element, 1.0).getScore()));
+        double result = new Match<>(first, group.get(1), childScores).getResult();
+        if (result <= first.getThreshold()) {
+            return Stream.empty();
+        }
+        return IntStream.range(1, group.size()).boxed().flatMap(i -> IntStream.range(0, i).boxed().flatMap(j -> {
+            Match<Document> match = new Match<>(group.get(i), group.get(j), result);
+            return pairsOnly ? Stream.of(match) : Stream.of(match, match.reversed());
+        }));
+    }
+
+    /**
+     * The fingerprint of a document, equal for the documents which are exact duplicates. It holds the threshold,
+     * source flag and blocking keys of the document, along with the ElementClassification, pre-processed value and all
+     * the settings of each of its pre-processed elements. So exact duplicates have the same matches with every other
+     * document
+     */
+    private static List<Object> getFingerprint(Document document) {
+        Set<List<Object>> elements = new HashSet<>();
+        document.getPreProcessedElement().forEach(element -> elements.add(Arrays.asList(
+                element.getElementClassification(), element.getPreProcessedValue(), element.getWeight(),
+                element.getThreshold(), element.getNeighborhoodRange(), element.getMaxEditDistance(),
+                element.getMatchType(), element.getTokenizerFunction())));
+        return Arrays.asList(document.getThreshold(), document.isSource(), document.getBlockingKeys(), elements);
+    }
+
+    /**
+     * Adds all the elements of the documents to the index, without matching them. In parallel mode, the documents are
+     * indexed in parallel
+     *
+     * @param documents Stream of Document objects
+     */
+    public void indexDocuments(Stream<Document> documents) {
+        CanonicalElements canonicalElements = newCanonicalElements();
+        if (matchOptions.isParallel()) {
+            runInChunks(documents.collect(Collectors.toList()), chunk -> {
+                chunk.forEach(document -> indexDocument(document, canonicalElements));
+                return null;
+            });
+            return;
+        }
+        documents.forEach(document -> indexDocument(document, canonicalElements));
+    }
+
+    private void indexDocument(Document document, CanonicalElements canonicalElements) {
+        tokenize(canonicalElements, document);
+        document.getPreProcessedElement().forEach(elementMatch::indexElement);
+    }
+
+    /**
+     * Executes matching of a document stream against the documents already indexed.
+     * The probed documents are not added to the index. In parallel mode, the documents are probed in parallel
+     *
+     * @param documents Stream of Document objects
+     * @return Stream of Match of Document type objects
+     */
+    public Stream<Match<Document>> probeDocuments(Stream<Document> documents) {
+        CanonicalElements canonicalElements = newCanonicalElements();
+        if (matchOptions.isParallel()) {
+            List<List<Match<Document>>> chunkMatches = runInChunks(documents.collect(Collectors.toList()),
+                    chunk -> chunk.stream()
+                            .flatMap(document -> probeDocument(document, canonicalElements))
+                            .collect(Collectors.toList()));
+            return chunkMatches.stream().flatMap(List::stream);
+        }
+        return documents.flatMap(document -> probeDocument(document, canonicalElements));
+    }
+
+    private Stream<Match<Document>> probeDocument(Document document, CanonicalElements canonicalElements) {
+        tokenize(canonicalElements, document);
+        Set<Match<Element>> eleMatches = probeElements(document, (element, candidateFilter) ->
+                probeElement(elementMatch, element, candidateFilter, canonicalElements).stream()
+                        .filter(match -> isSameBlock(document, match.getMatchedWith().getDocument()))
+                        .collect(Collectors.toSet()), element -> { });
+        return documentThresholdMatching(document, eleMatches);
+    }
+
+    /**
+     * Probes the elements of a document heaviest first, with upper bound pruning of the candidate documents.
+     * <p>
+     * Before each element, the best score a document can still reach is its score if all the elements left match it
+     * perfectly. Once a document which matched none of the elements probed so far cannot beat the threshold, the
+     * elements left only keep the matches of the candidate documents already found, and the candidates which cannot
+     * beat the threshold any more are dropped. The candidate filter is tested on the elements scoring above their
+     * threshold only, so an index mapped to a file does not decode the other documents. When no candidate is left,
+     * the elements left are not probed at all. So the document matches are the same, with less elements probed at
+     * high thresholds.
+     * <p>
+     * The best score of a document which matched nothing yet is calculated as if it held the same elements as the
+     * probed document. Holding other elements adds unmatched children, which bring the score closer to the unmatched
+     * child score. So the pruning only applies from a document threshold of the unmatched child score.
+     *
+     * @param document the document to probe
+     * @param probe    probes an element, with the filter of the candidate documents or null for all of them
+     * @param probed   receives each element once probed or skipped
+     * @return the element matches of the candidate documents left
+     */
+    private Set<Match<Element>> probeElements(Document document,
+                                              BiFunction<Element, Predicate<Element>, Set<Match<Element>>> probe,
+                                              Consumer<Element> probed) {
+        List<Element> elements = new ArrayList<>(document.getPreProcessedElement());
+        elements.sort((element, other) -> Double.compare(other.getWeight(), element.getWeight()));
+        double threshold = document.getThreshold();
+        boolean bounded = threshold >= ScoringFunction.DEFAULT_UNMATCHED_CHILD_SCORE;
+
+        Map<Document, List<Match<Element>>> candidates = new HashMap<>();
+        boolean closed = false;
+        for (int i = 0; i < elements.size(); i++) {
+            Element element = elements.get(i);
+            List<Element> remaining = elements.subList(i, elements.size());
+            if (bounded && !closed) {
+                closed = getMaxScore(document, document, Collections.emptyList(), remaining) <= threshold;
+            }
+            if (closed) {
+                candidates.entrySet().removeIf(candidate ->
+                        getMaxScore(document, candidate.getKey(), candidate.getValue(), remaining) <= threshold);
+                if (candidates.isEmpty()) {
+                    elements.subList(i, elements.size()).forEach(probed);
+                    break;
+                }
+            }
+            Predicate<Element> candidateFilter = closed
+                    ? matchElement -> candidates.containsKey(matchElement.getDocument())
+                    : null;
+            Set<Match<Element>> matches = probe.apply(element, candidateFilter);
+            probed.accept(element);
+            matches.forEach(match -> candidates
+                    .computeIfAbsent(match.getMatchedWith().getDocument(), key -> new ArrayList<>()).add(match));
+        }
+        Set<Match<Element>> eleMatches = new HashSet<>();
+        candidates.values().forEach(eleMatches::addAll);
+        return eleMatches;
+    }
+
+    /**
+     * @return the score of the candidate, if all the remaining elements match it perfectly
+     */
+    private static double getMaxScore(Document document, Document candidate, List<Match<Element>> matches,
+                                      List<Element> remaining) {
+        List<Score> childScores = new ArrayList<>(matches.size() + remaining.size());
+        matches.forEach(match -> childScores.add(match.getScore()));
+        remaining.forEach(element -> childScores.add(new Match<Element>(element, element, 1.0).getScore()));
+        return new Match<>(document, candidate, childScores).getResult();
+    }
+
+    private static Predicate<Element> and(Predicate<Element> filter, Predicate<Element> other) {
+        if (filter == null) {
+            return other;
+        }
+        return other == null ? filter : filter.and(other);
+    }
+
+    /**
+     * Matches the documents in two phases. All the documents are indexed in parallel first, then each document is
+     * probed in parallel against the complete index. A document is only matched with the documents before it in the
+     * list, which gives the same pairs as matching them one after another
+     */
+    private Stream<Match<Document>> matchDocumentsInParallel(List<Document> documents) {
+        Map<Document, Integer> sequence = new IdentityHashMap<>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            sequence.put(documents.get(i), i);
+        }
+
+        CanonicalElements canonicalElements = newCanonicalElements();
+        runInChunks(documents, chunk -> {
+            chunk.forEach(document -> {
+                tokenize(canonicalElements, document);
+                if (matchOptions.isProbeOnly() && BooleanUtils.isTrue(document.isSource())) {
+                    // Not indexed, but tokenized upfront with the other documents
+                    document.getPreProcessedElement().forEach(Element::getTokens);
+                } else {
+                    getBlockMatches(document).forEach(blockMatch ->
+                            document.getPreProcessedElement().forEach(blockMatch.getValue()::indexElement));
+                }
+            });
+            return null;
+        });
+
+        List<List<Match<Document>>> chunkMatches = runInChunks(documents, chunk -> chunk.stream()
+                .filter(document -> BooleanUtils.isNotFalse(document.isSource()))
+                .flatMap(document -> {
+                    int documentSequence = sequence.get(document);
+                    return getBlockMatches(document).flatMap(blockMatch -> {
+                        Predicate<Element> blockFilter = getBlockFilter(document, blockMatch.getKey());
+                        Predicate<Element> candidateFilter = blockFilter == null
+                                ? matchElement -> sequence.get(matchElement.getDocument()) < documentSequence
+                                : matchElement -> sequence.get(matchElement.getDocument()) < documentSequence
+                                && blockFilter.test(matchElement);
+                        Set<Match<Element>> eleMatches = probeElements(document, (element, documentFilter) ->
+                                probeElement(blockMatch.getValue(), element, and(candidateFilter, documentFilter),
+                                        canonicalElements),
+                                element -> { });
+                        return documentThresholdMatching(document, eleMatches);
+                    });
+                })
+                .collect(Collectors.toList()));
+
+        return chunkMatches.stream().flatMap(List::stream);
+    }
+
+    /**
+     * Matches each document with the documents before it in the sorted order, within a window of windowSize documents.
+     * The window is indexed in two generations of windowSize - 1 documents. Once the current generation is full, it
+     * replaces the previous one, whose index is dropped. So at most twice the window is held in memory, and the
+     * valueCache, which would hold every distinct value, is not used
+     *
+     * @param documents  the documents, sorted by the sort key
+     * @param windowSize the number of documents in the window
+     * @return Stream of Match of Document type objects, with the matches of each document after it is read
+     */
+    Stream<Match<Document>> matchSortedNeighborhood(Iterator<Document> documents, int windowSize) {
+        int generationSize = windowSize - 1;
+        Map<Document, Long> positions = new IdentityHashMap<>();
+        Deque<Document> previousDocuments = new ArrayDeque<>();
+        Deque<Document> currentDocuments = new ArrayDeque<>();
+        ElementMatch[] generations = {new ElementMatch(matchOptions, matchStatistics), null};
+        long[] position = {0};
+
+        Iterator<List<Match<Document>>> matches = new Iterator<List<Match<Document>>>() {
+            @Override
+            public boolean hasNext() {
+                return documents.hasNext();
+            }
+
+            @Override
+            public List<Match<Document>> next() {
+                Document document = documents.next();
+                long documentPosition = position[0]++;
+                if (currentDocuments.size() == generationSize) {
+                    previousDocuments.forEach(positions::remove);
+                    previousDocuments.clear();
+                    previousDocuments.addAll(currentDocuments);
+                    currentDocuments.clear();
+                    generations[1] = generations[0];
+                    generations[0] = new ElementMatch(matchOptions, matchStatistics);
+                }
 
-        return documentMatch;
+                Predicate<Element> inWindow = matchElement ->
+                        documentPosition - positions.get(matchElement.getDocument()) < windowSize;
+                Set<Match<Element>> eleMatches = BooleanUtils.isFalse(document.isSource())
+                        ? Collections.emptySet()
+                        : probeElements(document, (element, candidateFilter) -> {
+                            Set<Match<Element>> generationMatches = new HashSet<>();
+                            for (ElementMatch generation : generations) {
+                                if (generation != null) {
+                                    generationMatches.addAll(generation.probeElement(element, and(inWindow, candidateFilter)));
+                                }
+                            }
+                            return generationMatches;
+                        }, element -> { });
+                List<Match<Document>> documentMatches = documentThresholdMatching(document, eleMatches)
+                        .filter(match -> isSameBlock(match.getData(), match.getMatchedWith()))
+                        .collect(Collectors.toList());
+
+                if (!(matchOptions.isProbeOnly() && BooleanUtils.isTrue(document.isSource()))) {
+                    positions.put(document, documentPosition);
+                    currentDocuments.add(document);
+                    document.getPreProcessedElement().forEach(generations[0]::indexElement);
+                }
+                return documentMatches;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(matches, Spliterator.ORDERED), false)
+                .flatMap(List::stream);
+    }
+
+    /**
+     * @return the index of each block of the document, by blocking key. A document without a blocking key only has
+     * the default index, with a null key
+     */
+    private Stream<Map.Entry<String, ElementMatch>> getBlockMatches(Document document) {
+        if (document.getBlockingKeys().isEmpty()) {
+            return Stream.of(new AbstractMap.SimpleEntry<>(null, elementMatch));
+        }
+        return document.getBlockingKeys().stream().map(blockingKey -> new AbstractMap.SimpleEntry<>(blockingKey,
+                blockMatches.computeIfAbsent(blockingKey, key -> new ElementMatch(matchOptions, matchStatistics))));
+    }
+
+    /**
+     * @return the filter keeping the candidates whose first block shared with the document is the given block,
+     * null when the document is in a single block, as every candidate of the block then passes
+     */
+    private static Predicate<Element> getBlockFilter(Document document, String blockingKey) {
+        if (document.getBlockingKeys().size() <= 1) {
+            return null;
+        }
+        return matchElement -> blockingKey.equals(getFirstSharedBlockingKey(document, matchElement.getDocument()));
+    }
+
+    /**
+     * @return the shared store of the element values for a single match, null when the valueCache is not enabled
+     */
+    private CanonicalElements newCanonicalElements() {
+        return matchOptions.isValueCache() ? new CanonicalElements() : null;
+    }
+
+    private static void tokenize(CanonicalElements canonicalElements, Document document) {
+        if (canonicalElements != null) {
+            canonicalElements.tokenize(document);
+        }
+    }
+
+    private static Set<Match<Element>> probeElement(ElementMatch elementMatch, Element element,
+                                                    Predicate<Element> candidateFilter,
+                                                    CanonicalElements canonicalElements) {
+        if (canonicalElements != null) {
+            return canonicalElements.probe(elementMatch, element, candidateFilter);
+        }
+        return candidateFilter == null
+                ? elementMatch.probeElement(element)
+                : elementMatch.probeElement(element, candidateFilter);
+    }
+
+    private static boolean isSameBlock(Document document, Document other) {
+        return document.getBlockingKeys().isEmpty()
+                ? other.getBlockingKeys().isEmpty()
+                : getFirstSharedBlockingKey(document, other) != null;
+    }
+
+    private static String getFirstSharedBlockingKey(Document document, Document other) {
+        for (String blockingKey : document.getBlockingKeys()) {
+            if (other.getBlockingKeys().contains(blockingKey)) {
+                return blockingKey;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Splits the items in chunks, and runs the task on each chunk with the executor of the MatchOptions
+     *
+     * @return the result of the task for each chunk, in the order of the items
+     */
+    <E, R> List<R> runInChunks(List<E> items, Function<List<E>, R> task) {
+        int chunkCount = Runtime.getRuntime().availableProcessors() * 4;
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, (items.size() + chunkCount - 1) / chunkCount);
+
+        List<CompletableFuture<R>> futures = new ArrayList<>();
+        for (int from = 0; from < items.size(); from += chunkSize) {
+            List<E> chunk = items.subList(from, Math.min(from + chunkSize, items.size()));
+            futures.add(CompletableFuture.supplyAsync(() -> task.apply(chunk), matchOptions.getExecutor()));
+        }
+        try {
+            return futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
     }
 
     private Stream<Match<Document>> documentThresholdMatching(Document document, Set<Match<Element>> matchingElements) {
@@ -56,9 +540,9 @@ public class DocumentMatch {
             // Document match Found
             if (leftMatch.getScore().getResult() > leftMatch.getData().getThreshold()) {
 
-                if (BooleanUtils.isNotFalse(matchEntry.getKey().isSource())) {
-                    Match<Document> rightMatch = new Match<Document>(matchEntry.getKey(), document, childScoreList);
-                    return Stream.of(leftMatch, rightMatch);
+                if (!pairsOnly && BooleanUtils.isNotFalse(matchEntry.getKey().isSource())) {
+                    // The document score is symmetric, so the other direction is not scored again
+                    return Stream.of(leftMatch, leftMatch.reversed());
                 }
                 return Stream.of(leftMatch);
             } else {
@@ -0,0 +1,294 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Document;
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.ElementType;
+import com.intuit.fuzzymatcher.domain.MatchType;
+import com.intuit.fuzzymatcher.domain.Token;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static com.intuit.fuzzymatcher.component.IndexFileFormat.*;
+
+/**
+ * External merge sort of documents, by several sort keys at once.
+ * <p>
+ * The documents are read once, in runs of runSize documents. Each run is sorted by every key and spilled to a file per
+ * key, holding the key and the document of each record. The documents are then read back sorted by a key by merging
+ * the runs of the key. Documents with equal keys keep the order they were added in. If all the documents fit in a
+ * single run, they are sorted in memory and nothing is written to disk.
+ * <p>
+ * A spilled document holds its key, threshold, source flag, blocking keys and the value, pre-processed value,
+ * weight, threshold, neighborhoodRange, maxEditDistance and token values of its pre-processed elements, so it is never
+ * pre-processed nor tokenized again, and matches the same as in memory whatever its PreProcess and Tokenizer functions.
+ */
+class DocumentSorter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte NULL_SOURCE = 0;
+    private static final byte REFERENCE = 1;
+    private static final byte SOURCE = 2;
+
+    private final List<Function<Document, String>> sortKeys;
+
+    private final int runSize;
+
+    private final Path directory;
+
+    // The sorted run files, by sort key
+    private final List<List<Path>> runs = new ArrayList<>();
+
+    private final List<RunReader> openReaders = new ArrayList<>();
+
+    // The only run of every sort key, when all the documents fit in memory
+    private List<List<Document>> sortedDocuments;
+
+    DocumentSorter(List<Function<Document, String>> sortKeys, int runSize, Path directory) {
+        this.sortKeys = sortKeys;
+        this.runSize = runSize;
+        this.directory = directory;
+        sortKeys.forEach(sortKey -> runs.add(new ArrayList<>()));
+    }
+
+    /**
+     * Reads all the documents, and writes the sorted runs
+     *
+     * @param documents the documents to sort
+     * @throws IOException if a run cannot be written
+     */
+    void sort(Stream<Document> documents) throws IOException {
+        List<Document> run = new ArrayList<>();
+        Iterator<Document> iterator = documents.iterator();
+        while (iterator.hasNext()) {
+            run.add(iterator.next());
+            if (run.size() == runSize && iterator.hasNext()) {
+                spill(run);
+                run.clear();
+            }
+        }
+        if (runs.get(0).isEmpty()) {
+            sortedDocuments = new ArrayList<>();
+            for (Function<Document, String> sortKey : sortKeys) {
+                List<Document> sorted = new ArrayList<>(run);
+                sorted.sort(Comparator.comparing(sortKey));
+                sortedDocuments.add(sorted);
+            }
+        } else if (!run.isEmpty()) {
+            spill(run);
+        }
+    }
+
+    /**
+     * @param keyIndex the index of the sort key
+     * @return the documents sorted by the key. The runs are read as the iterator advances
+     * @throws IOException if a run cannot be read
+     */
+    Iterator<Document> iterator(int keyIndex) throws IOException {
+        if (sortedDocuments != null) {
+            return sortedDocuments.get(keyIndex).iterator();
+        }
+        PriorityQueue<RunReader> readers = new PriorityQueue<>(Comparator
+                .comparing((RunReader reader) -> reader.key).thenComparingInt(reader -> reader.index));
+        List<Path> keyRuns = runs.get(keyIndex);
+        for (int index = 0; index < keyRuns.size(); index++) {
+            RunReader reader = new RunReader(keyRuns.get(index), index);
+            openReaders.add(reader);
+            if (reader.next()) {
+                readers.add(reader);
+            } else {
+                reader.close();
+            }
+        }
+        return new Iterator<Document>() {
+            @Override
+            public boolean hasNext() {
+                return !readers.isEmpty();
+            }
+
+            @Override
+            public Document next() {
+                RunReader reader = readers.poll();
+                if (reader == null) {
+                    throw new NoSuchElementException();
+                }
+                Document document = reader.document;
+                try {
+                    if (reader.next()) {
+                        readers.add(reader);
+                    } else {
+                        reader.close();
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return document;
+            }
+        };
+    }
+
+    /**
+     * Closes the runs still being read, and deletes the run files
+     */
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (RunReader reader : openReaders) {
+            try {
+                reader.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        for (List<Path> keyRuns : runs) {
+            for (Path run : keyRuns) {
+                try {
+                    Files.deleteIfExists(run);
+                } catch (IOException e) {
+                    exception = e;
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private void spill(List<Document> run) throws IOException {
+        // Every document is written once per key, so it is serialized once
+        List<byte[]> records = new ArrayList<>(run.size());
+        for (Document document : run) {
+            records.add(writeDocument(document));
+        }
+        for (int keyIndex = 0; keyIndex < sortKeys.size(); keyIndex++) {
+            Function<Document, String> sortKey = sortKeys.get(keyIndex);
+            String[] keys = new String[run.size()];
+            Integer[] order = new Integer[run.size()];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = sortKey.apply(run.get(i));
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparing(i -> keys[i]));
+
+            Path path = Files.createTempFile(directory, "fuzzy-match-run", ".tmp");
+            runs.get(keyIndex).add(path);
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE))) {
+                for (int i : order) {
+                    writeString(out, keys[i]);
+                    out.writeInt(records.get(i).length);
+                    out.write(records.get(i));
+                }
+            }
+        }
+    }
+
+    private static byte[] writeDocument(Document document) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        writeString(record, document.getKey());
+        record.writeDouble(document.getThreshold());
+        Boolean source = document.isSource();
+        record.writeByte(source == null ? NULL_SOURCE : source ? SOURCE : REFERENCE);
+        record.writeInt(document.getBlockingKeys().size());
+        for (String blockingKey : document.getBlockingKeys()) {
+            writeString(record, blockingKey);
+        }
+        Set<Element> elements = document.getPreProcessedElement();
+        record.writeInt(elements.size());
+        for (Element element : elements) {
+            record.writeInt(element.getElementClassification().getElementType().ordinal());
+            writeValue(record, element.getElementClassification().getVariance());
+            record.writeInt(element.getMatchType().ordinal());
+            writeValue(record, element.getValue());
+            record.writeDouble(element.getWeight());
+            record.writeDouble(element.getThreshold());
+            record.writeDouble(element.getNeighborhoodRange());
+            record.writeInt(element.getMaxEditDistance());
+            writeValue(record, element.getPreProcessedValue());
+            List<Token> tokens = element.getTokens();
+            record.writeInt(tokens.size());
+            for (Token token : tokens) {
+                writeValue(record, token.getValue());
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Document readDocument(ByteBuffer record) {
+        Document.Builder documentBuilder = new Document.Builder(readString(record)).setThreshold(record.getDouble());
+        byte source = record.get();
+        int blockingKeyCount = record.getInt();
+        for (int i = 0; i < blockingKeyCount; i++) {
+            documentBuilder.addBlockingKey(readString(record));
+        }
+        int count = record.getInt();
+        for (int i = 0; i < count; i++) {
+            ElementType elementType = ElementType.values()[record.getInt()];
+            String variance = (String) readValue(record);
+            MatchType matchType = MatchType.values()[record.getInt()];
+            Element element = new Element<>(elementType, variance, readValue(record), record.getDouble(),
+                    record.getDouble(), record.getDouble(), record.getInt(), null, null, matchType);
+            element.setPreProcessedValue(readValue(record));
+            int tokenCount = record.getInt();
+            List<Token> tokens = new ArrayList<>(tokenCount);
+            for (int j = 0; j < tokenCount; j++) {
+                tokens.add(new Token<>(readValue(record), element));
+            }
+            element.setTokens(tokens);
+            documentBuilder.addElement(element);
+        }
+        Document document = documentBuilder.createDocument();
+        document.setSource(source == NULL_SOURCE ? null : source == SOURCE);
+        return document;
+    }
+
+    /**
+     * Reads the records of a run one after another
+     */
+    private static class RunReader implements Closeable {
+
+        final DataInputStream in;
+
+        final int index;
+
+        String key;
+
+        Document document;
+
+        RunReader(Path path, int index) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+            this.index = index;
+        }
+
+        /**
+         * @return false at the end of the run
+         */
+        boolean next() throws IOException {
+            int keyLength;
+            try {
+                keyLength = in.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+            byte[] keyBytes = new byte[keyLength];
+            in.readFully(keyBytes);
+            byte[] record = new byte[in.readInt()];
+            in.readFully(record);
+            key = new String(keyBytes, StandardCharsets.UTF_8);
+            document = readDocument(ByteBuffer.wrap(record));
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
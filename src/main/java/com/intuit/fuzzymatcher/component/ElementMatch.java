@@ -2,54 +2,322 @@ package com.intuit.fuzzymatcher.component;
 
 import com.intuit.fuzzymatcher.domain.Element;
 import com.intuit.fuzzymatcher.domain.Match;
+import com.intuit.fuzzymatcher.domain.MatchType;
 import com.intuit.fuzzymatcher.domain.Token;
 import org.apache.commons.lang3.BooleanUtils;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 public class ElementMatch {
 
-    private final TokenRepo tokenRepo;
+    // At most one CandidateCounts per processor is kept for reuse, the others are dropped after their probe
+    private static final int MAX_POOLED_COUNTS = Runtime.getRuntime().availableProcessors();
+
+    private final TokenIndex tokenIndex;
+
+    // The counts released by the probes of this index, sized by its ordinals and dropped with it
+    private final Queue<CandidateCounts> candidateCounts = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger pooledCounts = new AtomicInteger();
+
+    private final boolean prefixFilter;
+
+    private final MatchStatistics matchStatistics;
 
     public ElementMatch() {
-        this.tokenRepo = new TokenRepo();
+        this(MatchOptions.defaults(), new MatchStatistics());
+    }
+
+    public ElementMatch(MatchOptions matchOptions, MatchStatistics matchStatistics) {
+        this(new TokenRepo(matchOptions), matchOptions, matchStatistics);
+    }
+
+    ElementMatch(TokenIndex tokenIndex, MatchOptions matchOptions, MatchStatistics matchStatistics) {
+        this.tokenIndex = tokenIndex;
+        this.prefixFilter = matchOptions.isPrefixFilter();
+        this.matchStatistics = matchStatistics;
     }
 
     public Set<Match<Element>> matchElement(Element element) {
-        Set<Match<Element>> matchElements = new HashSet<>();
-        Map<Element, Integer> elementTokenScore = new HashMap<>();
+        Set<Match<Element>> matchElements = BooleanUtils.isNotFalse(element.getDocument().isSource())
+                ? probeElement(element)
+                : new HashSet<>();
+
+        indexElement(element);
+
+        return matchElements;
+    }
+
+    /**
+     * Looks up the tokens of an element against the elements already indexed, without adding the element to the index.
+     * Tokens skipped by the StopTokenPolicy do not look up new candidates, but still count towards the candidates found
+     * by the other tokens, so the score of a candidate is the same as without the StopTokenPolicy
+     *
+     * @param element the element to match
+     * @return the set of element matches above the element threshold
+     */
+    public Set<Match<Element>> probeElement(Element element) {
+        return probeOrdinals(element, null);
+    }
+
+    /**
+     * Looks up the tokens of an element against the indexed elements accepted by the candidate filter. The tokens are
+     * counted by ordinal for all the indexed elements, and the filter is only tested on the elements scoring above the
+     * threshold, so that no other Element is looked up from the index
+     *
+     * @param element         the element to match
+     * @param candidateFilter the indexed elements to consider as candidates
+     * @return the set of element matches above the element threshold
+     */
+    Set<Match<Element>> probeElement(Element element, Predicate<Element> candidateFilter) {
+        return probeOrdinals(element, candidateFilter);
+    }
+
+    /**
+     * Adds the tokens of an element to the index, so that subsequent probes can match against it
+     *
+     * @param element the element to index
+     */
+    public void indexElement(Element element) {
+        tokenIndex.put(element);
+    }
+
+    /**
+     * @return the number of elements in the index, which only grows as elements are indexed
+     */
+    int getIndexSize() {
+        return tokenIndex.size();
+    }
+
+    /**
+     * Counts the matching tokens by the ordinal of the indexed elements, and only looks up the Element of the
+     * ordinals scoring above the threshold, once all the tokens are counted, before testing the candidate filter
+     */
+    private Set<Match<Element>> probeOrdinals(Element element, Predicate<Element> candidateFilter) {
+        CandidateCounts elementTokenScore = candidateCounts.poll();
+        if (elementTokenScore == null) {
+            elementTokenScore = new CandidateCounts();
+        } else {
+            pooledCounts.decrementAndGet();
+        }
+        try {
+            return probeOrdinals(element, candidateFilter, elementTokenScore);
+        } finally {
+            elementTokenScore.clear();
+            if (pooledCounts.incrementAndGet() <= MAX_POOLED_COUNTS) {
+                candidateCounts.offer(elementTokenScore);
+            } else {
+                pooledCounts.decrementAndGet();
+            }
+        }
+    }
+
+    private Set<Match<Element>> probeOrdinals(Element element, Predicate<Element> candidateFilter,
+                                              CandidateCounts elementTokenScore) {
+        int[] counters = {0, 0};
 
         List<Token> tokens = element.getTokens();
-        tokens.stream()
-                .filter(token -> BooleanUtils.isNotFalse(element.getDocument().isSource()))
-                .forEach(token -> {
-                    elementThresholdMatching(token, elementTokenScore, matchElements);
-                });
+        List<Token> probedTokens = new ArrayList<>(tokens.size());
+        List<Token> stopTokens = new ArrayList<>();
+        for (Token token : tokens) {
+            if (tokenIndex.isStopToken(token)) {
+                stopTokens.add(token);
+            } else {
+                probedTokens.add(token);
+            }
+        }
 
-        tokens.forEach(token -> tokenRepo.put(token));
+        int[] similar = getSimilarCandidates(element, counters);
+        if (similar != null) {
+            candidateMatching(tokens, similar, elementTokenScore, counters);
+        } else {
+            boundedMatching(element, probedTokens, stopTokens, elementTokenScore, counters);
+        }
+
+        Set<Match<Element>> matchElements = new HashSet<>();
+        for (int i = 0; i < elementTokenScore.size(); i++) {
+            int ordinal = elementTokenScore.getOrdinal(i);
+            double elementScore = element.getScore(elementTokenScore.get(ordinal), tokenIndex.getTokenCount(ordinal));
 
+            // Element match Found, unless it was removed from the index since it was counted
+            if (elementScore > element.getThreshold()) {
+                Element matchElement = tokenIndex.getElement(ordinal);
+                if (matchElement != null && (candidateFilter == null || candidateFilter.test(matchElement))) {
+                    matchElements.add(new Match<>(element, matchElement, elementScore));
+                }
+            }
+        }
+
+        matchStatistics.addProbedTokens(probedTokens.size());
+        matchStatistics.addPrunedTokens(stopTokens.size());
+        matchStatistics.addScannedPostings(counters[0]);
+        matchStatistics.addScoreUpdates(counters[1]);
         return matchElements;
     }
 
-    private void elementThresholdMatching(Token token, Map<Element, Integer> elementTokenScore, Set<Match<Element>> matchingElements) {
-        Set<Element> matchElements = tokenRepo.get(token);
-        Element element = token.getElement();
+    /**
+     * Upper bound pruning of the candidates. A candidate which counted some of the tokens so far can at best match all
+     * the remaining ones, which gives the best score it can still reach. Once the remaining tokens are at most
+     * maxMissing, an element which is not a candidate yet scores at most the threshold, so the rest of the tokens only
+     * count towards the candidates already found. After each of them, the candidates which cannot reach the threshold
+     * any more are dropped, and the next token looks them up in its posting when they are fewer than the elements
+     * holding it. So the matches are the same as counting every token, with less postings scanned at high thresholds.
+     * <p>
+     * With prefixFilter, the tokens are ordered rarest first, so the new candidates only come from the rarest tokens.
+     * <p>
+     * The stop tokens come after all the other tokens, and only count towards the candidates already found, whatever
+     * the prefix, as they are never used to find new candidates.
+     * <p>
+     * The bound only holds for EQUALITY elements, where a token of the candidate is matched by a single token. A
+     * NEAREST_NEIGHBORS or EDIT_DISTANCE token of the candidate can be matched by several tokens, so these elements
+     * count every token without pruning.
+     */
+    private void boundedMatching(Element element, List<Token> probedTokens, List<Token> stopTokens,
+                                 CandidateCounts elementTokenScore, int[] counters) {
+        if (element.getMatchType() != MatchType.EQUALITY) {
+            for (Token token : probedTokens) {
+                tokenMatching(token, elementTokenScore, counters);
+            }
+            return;
+        }
+        int tokenCount = element.getTokens().size();
+        double threshold = element.getThreshold();
+        List<Token> orderedTokens = new ArrayList<>(prefixFilter ? getRarestFirst(probedTokens) : probedTokens);
+        orderedTokens.addAll(stopTokens);
+        int prefixSize = orderedTokens.size() - getMaxMissing(tokenCount, threshold);
+        if (prefixSize <= 0) {
+            return;
+        }
+        prefixSize = Math.min(prefixSize, probedTokens.size());
+
+        for (int i = 0; i < prefixSize; i++) {
+            tokenMatching(orderedTokens.get(i), elementTokenScore, counters);
+        }
 
-        // Token Match Found
-        if (matchElements != null) {
-            matchElements.forEach(matchElement -> {
-                int score = elementTokenScore.getOrDefault(matchElement, 0) + 1;
-                elementTokenScore.put(matchElement, score);
-                // Element Score above threshold
-                double elementScore = element.getScore(score, matchElement);
-
-                // Element match Found
-                if (elementScore > element.getThreshold()) {
-                    Match<Element> elementMatch = new Match<>(element, matchElement, elementScore);
-                    matchingElements.remove(elementMatch);
-                    matchingElements.add(elementMatch);
-                }
+        for (int i = prefixSize; i < orderedTokens.size(); i++) {
+            int remaining = orderedTokens.size() - i;
+            elementTokenScore.removeIf(ordinal -> {
+                int otherTokenCount = tokenIndex.getTokenCount(ordinal);
+                int maxCount = Math.min(elementTokenScore.get(ordinal) + remaining, otherTokenCount);
+                return element.getScore(maxCount, otherTokenCount) <= threshold;
+            });
+            if (elementTokenScore.size() == 0) {
+                return;
+            }
+            Token token = orderedTokens.get(i);
+            if (tokenIndex.getDocumentFrequency(token) <= elementTokenScore.size()) {
+                tokenIndex.forEach(token, ordinal -> {
+                    counters[0]++;
+                    if (elementTokenScore.incrementIfPresent(ordinal)) {
+                        counters[1]++;
+                    }
+                });
+            } else {
+                int[] candidates = elementTokenScore.toArray();
+                tokenIndex.forEachCandidate(token, candidates, candidates.length, ordinal -> {
+                    counters[1]++;
+                    elementTokenScore.increment(ordinal);
+                });
+            }
+        }
+    }
+
+    /**
+     * @return the tokens sorted by document frequency, with the NEAREST_NEIGHBORS and EDIT_DISTANCE tokens first as
+     * they cannot be looked up by candidate
+     */
+    private List<Token> getRarestFirst(List<Token> probedTokens) {
+        long[] order = new long[probedTokens.size()];
+        for (int i = 0; i < order.length; i++) {
+            Token token = probedTokens.get(i);
+            int documentFrequency = token.getElement().getMatchType() == MatchType.EQUALITY
+                    ? tokenIndex.getDocumentFrequency(token)
+                    : -1;
+            order[i] = ((long) (documentFrequency + 1) << 32) | i;
+        }
+        Arrays.sort(order);
+        List<Token> orderedTokens = new ArrayList<>(order.length);
+        for (long index : order) {
+            orderedTokens.add(probedTokens.get((int) index));
+        }
+        return orderedTokens;
+    }
+
+    /**
+     * @return the sorted distinct ordinals of the elements sharing a MinHash band with the element, null if MinHash is
+     * not enabled for the element
+     */
+    private int[] getSimilarCandidates(Element element, int[] counters) {
+        if (element.getMatchType() != MatchType.EQUALITY) {
+            return null;
+        }
+        int[][] candidates = {new int[16]};
+        int[] size = {0};
+        boolean enabled = tokenIndex.forEachSimilar(element, ordinal -> {
+            counters[0]++;
+            if (size[0] == candidates[0].length) {
+                candidates[0] = Arrays.copyOf(candidates[0], size[0] * 2);
+            }
+            candidates[0][size[0]++] = ordinal;
+        });
+        if (!enabled) {
+            return null;
+        }
+        int[] sorted = candidates[0];
+        Arrays.sort(sorted, 0, size[0]);
+        int distinct = 0;
+        for (int i = 0; i < size[0]; i++) {
+            if (distinct == 0 || sorted[distinct - 1] != sorted[i]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    /**
+     * Counts the matching tokens of the candidates only, by looking each of them up in the postings of the tokens,
+     * including the stop tokens
+     */
+    private void candidateMatching(List<Token> tokens, int[] candidates, CandidateCounts elementTokenScore,
+                                   int[] counters) {
+        if (candidates.length == 0) {
+            return;
+        }
+        for (Token token : tokens) {
+            tokenIndex.forEachCandidate(token, candidates, candidates.length, ordinal -> {
+                counters[1]++;
+                elementTokenScore.increment(ordinal);
             });
         }
     }
+
+    /**
+     * @return the largest number of matching tokens which scores at most the threshold, whatever the other element
+     */
+    private static int getMaxMissing(int tokenCount, double threshold) {
+        if (tokenCount == 0) {
+            return 0;
+        }
+        int maxMissing = Math.max(0, Math.min(tokenCount, (int) Math.floor(threshold * tokenCount)));
+        // Corrects the rounding of the product, so that the score compares the same way as in Element.getScore
+        while (maxMissing < tokenCount && (double) (maxMissing + 1) / tokenCount <= threshold) {
+            maxMissing++;
+        }
+        while (maxMissing > 0 && (double) maxMissing / tokenCount > threshold) {
+            maxMissing--;
+        }
+        return maxMissing;
+    }
+
+    private void tokenMatching(Token token, CandidateCounts elementTokenScore, int[] counters) {
+        // Token Match Found
+        tokenIndex.forEach(token, ordinal -> {
+            counters[0]++;
+            counters[1]++;
+            elementTokenScore.increment(ordinal);
+        });
+    }
 }
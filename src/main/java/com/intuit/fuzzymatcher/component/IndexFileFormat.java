@@ -0,0 +1,326 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.*;
+import com.intuit.fuzzymatcher.exception.MatchException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * The binary layout of a token index file, shared by the TokenIndexWriter and the MappedTokenIndex.
+ * <p>
+ * The file starts with a header, followed by the sections below, and ends with a fixed size footer holding the counts
+ * and the position of each section. All the numbers are big endian.
+ * <ul>
+ * <li>Documents - one record per document with its key, threshold, blocking keys and elements. Each element holds its ordinal,
+ * ElementClassification id, value, weight, threshold, neighborhoodRange, maxEditDistance and pre-processed value</li>
+ * <li>Document offsets - the position of each document record, by document ordinal</li>
+ * <li>Element documents and token counts - the document ordinal and number of tokens, by element ordinal</li>
+ * <li>Tokens - one record per EQUALITY and EDIT_DISTANCE token, with its ElementClassification id and value</li>
+ * <li>Postings - the ascending element ordinals of each token, with the position and length by token id</li>
+ * <li>Token hash table - open addressing table of token ids, hashed by the token record bytes</li>
+ * <li>Range keys - for each NEAREST_NEIGHBORS ElementClassification, the sorted keys and their element ordinals</li>
+ * <li>ElementClassifications - the table of ElementClassifications with their MatchType and token id range</li>
+ * </ul>
+ * The file is written by TokenIndexWriter, and either memory mapped by MappedTokenIndex or loaded on the heap by
+ * TokenIndexReader. It is mapped in chunks of 2^chunkShift bytes. Arrays are aligned on 8 bytes and records are padded so that
+ * they never cross a chunk, so every read is within a single mapped buffer.
+ */
+final class IndexFileFormat {
+
+    static final int MAGIC = 0x465A4958;
+    static final int VERSION = 3;
+
+    static final int DEFAULT_CHUNK_SHIFT = 30;
+
+    static final int HEADER_SIZE = 16;
+    static final int FOOTER_SIZE = 88;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte DATE = 6;
+
+    private IndexFileFormat() {
+    }
+
+    /**
+     * Checks the magic number and version of the header
+     *
+     * @param header the header buffer
+     * @param path   the file, used in the error message
+     * @return the chunkShift of the file
+     * @throws IOException if the file is not a token index file of this version
+     */
+    static int readHeader(ByteBuffer header, Path path) throws IOException {
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a token index file: " + path);
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported token index version " + version + ": " + path);
+        }
+        return header.getInt();
+    }
+
+    /**
+     * Reads a document record. The Elements are created with their pre-processed value, so they are never
+     * pre-processed again. Their tokens are not part of the record, and are restored from the postings by the reader
+     * when they are needed
+     *
+     * @param record          the buffer positioned at the document record
+     * @param classifications the ElementClassification table
+     * @param elementConsumer receives each Element with its ordinal
+     * @return the document, as a document of the existing list
+     */
+    static Document readDocument(ByteBuffer record, Classification[] classifications,
+                                 ObjIntConsumer<Element> elementConsumer) {
+        Document.Builder documentBuilder = new Document.Builder(readString(record)).setThreshold(record.getDouble());
+        int blockingKeyCount = record.getInt();
+        for (int i = 0; i < blockingKeyCount; i++) {
+            documentBuilder.addBlockingKey(readString(record));
+        }
+        int count = record.getInt();
+        for (int i = 0; i < count; i++) {
+            int ordinal = record.getInt();
+            Classification classification = classifications[record.getInt()];
+            Element element = new Element<>(classification.elementClassification.getElementType(),
+                    classification.elementClassification.getVariance(), readValue(record), record.getDouble(),
+                    record.getDouble(), record.getDouble(), record.getInt(), null, null, classification.matchType);
+            element.setPreProcessedValue(readValue(record));
+            documentBuilder.addElement(element);
+            elementConsumer.accept(element, ordinal);
+        }
+        Document document = documentBuilder.createDocument();
+        document.setSource(false);
+        return document;
+    }
+
+    static boolean isSupported(Object value) {
+        return value == null || value instanceof String || value instanceof Integer || value instanceof Long
+                || value instanceof Double || value instanceof Float || value instanceof Date;
+    }
+
+    static void writeValue(DataOutput out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString(out, (String) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Date) {
+            out.writeByte(DATE);
+            out.writeLong(((Date) value).getTime());
+        } else {
+            throw new MatchException("Data Type not supported");
+        }
+    }
+
+    static Object readValue(ByteBuffer buffer) {
+        byte type = buffer.get();
+        switch (type) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(buffer);
+            case INTEGER:
+                return buffer.getInt();
+            case LONG:
+                return buffer.getLong();
+            case DOUBLE:
+                return buffer.getDouble();
+            case FLOAT:
+                return buffer.getFloat();
+            case DATE:
+                return new Date(buffer.getLong());
+            default:
+                throw new MatchException("Data Type not supported");
+        }
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The record of a token. The encoding is prefix free, so two records are equal if their bytes are equal
+     *
+     * @param classificationId the id of the ElementClassification of the token
+     * @param value            the token value
+     * @return the bytes of the token record
+     */
+    static byte[] encodeToken(int classificationId, Object value) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(classificationId);
+            writeValue(out, value);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * FNV-1a hash of the token record, which is stable across JVMs unlike the hashCode of some values
+     */
+    static int hash(byte[] bytes) {
+        int hash = 0x811C9DC5;
+        for (byte b : bytes) {
+            hash = (hash ^ (b & 0xFF)) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * @param tokenCount the number of tokens in the hash table
+     * @return the power of 2 capacity of the hash table, keeping it at most half full
+     */
+    static int getHashCapacity(int tokenCount) {
+        return Integer.highestOneBit(Math.max(1, tokenCount)) << 2;
+    }
+
+    /**
+     * The counts and section positions held in the footer
+     */
+    static class Footer {
+
+        final int documentCount;
+
+        final int elementCount;
+
+        final int tokenCount;
+
+        final int hashCapacity;
+
+        final int classificationCount;
+
+        final long documentOffsetsPosition;
+
+        final long elementDocumentsPosition;
+
+        final long elementTokenCountsPosition;
+
+        final long tokenOffsetsPosition;
+
+        final long postingOffsetsPosition;
+
+        final long postingLengthsPosition;
+
+        final long hashSlotsPosition;
+
+        final long classificationsPosition;
+
+        Footer(ByteBuffer footer) {
+            this.documentCount = footer.getInt();
+            this.elementCount = footer.getInt();
+            this.tokenCount = footer.getInt();
+            this.hashCapacity = footer.getInt();
+            this.classificationCount = footer.getInt();
+            footer.getInt();
+            this.documentOffsetsPosition = footer.getLong();
+            this.elementDocumentsPosition = footer.getLong();
+            this.elementTokenCountsPosition = footer.getLong();
+            this.tokenOffsetsPosition = footer.getLong();
+            this.postingOffsetsPosition = footer.getLong();
+            this.postingLengthsPosition = footer.getLong();
+            this.hashSlotsPosition = footer.getLong();
+            this.classificationsPosition = footer.getLong();
+        }
+    }
+
+    /**
+     * An entry of the ElementClassification table
+     */
+    static class Classification {
+
+        final int id;
+
+        final ElementClassification elementClassification;
+
+        final MatchType matchType;
+
+        final int elementCount;
+
+        final int tokenBase;
+
+        final int tokenCount;
+
+        final NumericRangeIndex.KeyType keyType;
+
+        final boolean multiValued;
+
+        final int rangeSize;
+
+        final long rangeKeysPosition;
+
+        final long rangeOrdinalsPosition;
+
+        // The StopTokenPolicy limit of a mapped index, calculated on the first probe
+        volatile int maxDocumentFrequency = -1;
+
+        // The token values of an EDIT_DISTANCE ElementClassification of a mapped index, built on the first probe
+        volatile BkTree bkTree;
+
+        Classification(int id, ByteBuffer record) {
+            this.id = id;
+            ElementType elementType = ElementType.valueOf(readString(record));
+            this.elementClassification = new ElementClassification(elementType, (String) readValue(record));
+            this.matchType = MatchType.valueOf(readString(record));
+            this.elementCount = record.getInt();
+            this.tokenBase = record.getInt();
+            this.tokenCount = record.getInt();
+            byte keyTypeOrdinal = record.get();
+            this.keyType = keyTypeOrdinal < 0 ? null : NumericRangeIndex.KeyType.values()[keyTypeOrdinal];
+            this.multiValued = record.get() != 0;
+            this.rangeSize = record.getInt();
+            this.rangeKeysPosition = record.getLong();
+            this.rangeOrdinalsPosition = record.getLong();
+        }
+
+        /**
+         * Reads the ElementClassification table
+         *
+         * @param record the buffer positioned at the table record
+         * @param count  the number of ElementClassifications
+         * @return the table, indexed by id
+         */
+        static Classification[] readAll(ByteBuffer record, int count) {
+            Classification[] classifications = new Classification[count];
+            for (int id = 0; id < count; id++) {
+                classifications[id] = new Classification(id, record);
+            }
+            return classifications;
+        }
+    }
+}
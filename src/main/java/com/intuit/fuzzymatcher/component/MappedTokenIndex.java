@@ -0,0 +1,338 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.*;
+import com.intuit.fuzzymatcher.exception.MatchException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+import static com.intuit.fuzzymatcher.component.IndexFileFormat.*;
+
+/**
+ * A read only TokenIndex over a file written by TokenIndexWriter, memory mapped with FileChannel.map.
+ * <p>
+ * Probes read the token hash table and postings directly from the mapped buffers, without copying them on the heap.
+ * So the working set is held by the OS page cache, and the heap only holds the state of a probe. The Element and
+ * Document of a candidate are only read from the file when it scores above the threshold.
+ * <p>
+ * The mapping is released when the index is garbage collected. The index can be probed by multiple threads.
+ */
+class MappedTokenIndex implements TokenIndex {
+
+    private final ByteBuffer[] chunks;
+
+    private final int chunkShift;
+
+    private final long chunkMask;
+
+    private final Footer footer;
+
+    private final Map<ElementClassification, Classification> classificationMap = new HashMap<>();
+
+    private final Classification[] classifications;
+
+    private final StopTokenPolicy stopTokenPolicy;
+
+    private MappedTokenIndex(ByteBuffer[] chunks, int chunkShift, ByteBuffer footerBuffer, MatchOptions matchOptions) {
+        this.chunks = chunks;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+        this.stopTokenPolicy = matchOptions.getStopTokenPolicy();
+        this.footer = new Footer(footerBuffer);
+        this.classifications = Classification.readAll(getRecord(footer.classificationsPosition),
+                footer.classificationCount);
+        for (Classification classification : classifications) {
+            classificationMap.put(classification.elementClassification, classification);
+        }
+    }
+
+    /**
+     * Maps a token index file
+     *
+     * @param path         the file written by TokenIndexWriter
+     * @param matchOptions the options used to probe the index
+     * @return the index
+     * @throws IOException if the file cannot be read, or is not a token index file
+     */
+    static MappedTokenIndex open(Path path, MatchOptions matchOptions) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + FOOTER_SIZE) {
+                throw new IOException("Not a token index file: " + path);
+            }
+            int chunkShift = readHeader(read(channel, 0, HEADER_SIZE), path);
+
+            long chunkSize = 1L << chunkShift;
+            ByteBuffer[] chunks = new ByteBuffer[(int) ((size + chunkSize - 1) >>> chunkShift)];
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i << chunkShift;
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(chunkSize, size - start));
+                chunks[i] = chunk;
+            }
+            // The mapping stays valid after the channel is closed
+            return new MappedTokenIndex(chunks, chunkShift, read(channel, size - FOOTER_SIZE, FOOTER_SIZE), matchOptions);
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of token index file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Override
+    public void put(Element element) {
+        throw new UnsupportedOperationException("The mapped token index is read only");
+    }
+
+    @Override
+    public void forEach(Token token, IntConsumer consumer) {
+        Classification classification = classificationMap.get(token.getElement().getElementClassification());
+        if (classification == null) {
+            return;
+        }
+        if (classification.matchType == MatchType.NEAREST_NEIGHBORS) {
+            forEachInRange(classification, token, consumer);
+            return;
+        }
+        if (classification.matchType == MatchType.EDIT_DISTANCE) {
+            forEachWithinDistance(classification, token, consumer);
+            return;
+        }
+        forEachInPosting(getTokenId(classification, token.getValue()), consumer);
+    }
+
+    @Override
+    public void forEachCandidate(Token token, int[] candidates, int count, IntConsumer consumer) {
+        Classification classification = classificationMap.get(token.getElement().getElementClassification());
+        if (classification == null || classification.matchType != MatchType.EQUALITY) {
+            return;
+        }
+        int tokenId = getTokenId(classification, token.getValue());
+        if (tokenId < 0) {
+            return;
+        }
+        long posting = getLong(footer.postingOffsetsPosition + 8L * tokenId);
+        int length = getInt(footer.postingLengthsPosition + 4L * tokenId);
+        for (int i = 0; i < count; i++) {
+            int candidate = candidates[i];
+            int low = 0;
+            int high = length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int ordinal = getInt(posting + 4L * mid);
+                if (ordinal < candidate) {
+                    low = mid + 1;
+                } else if (ordinal > candidate) {
+                    high = mid - 1;
+                } else {
+                    consumer.accept(candidate);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * The token index file holds no MinHash bands, so the candidates are always found from the tokens
+     */
+    @Override
+    public boolean forEachSimilar(Element element, IntConsumer consumer) {
+        return false;
+    }
+
+    @Override
+    public int getDocumentFrequency(Token token) {
+        Classification classification = classificationMap.get(token.getElement().getElementClassification());
+        if (classification == null || classification.matchType != MatchType.EQUALITY) {
+            return 0;
+        }
+        int tokenId = getTokenId(classification, token.getValue());
+        return tokenId < 0 ? 0 : getInt(footer.postingLengthsPosition + 4L * tokenId);
+    }
+
+    /**
+     * Only EQUALITY tokens can be stop tokens
+     */
+    @Override
+    public boolean isStopToken(Token token) {
+        Classification classification = classificationMap.get(token.getElement().getElementClassification());
+        if (classification == null || classification.matchType != MatchType.EQUALITY) {
+            return false;
+        }
+        int tokenId = getTokenId(classification, token.getValue());
+        return tokenId >= 0
+                && getInt(footer.postingLengthsPosition + 4L * tokenId) > getMaxDocumentFrequency(classification);
+    }
+
+    /**
+     * Reads the document of the element from the file. Each call returns a new Element and Document
+     */
+    @Override
+    public Element getElement(int ordinal) {
+        int documentOrdinal = getInt(footer.elementDocumentsPosition + 4L * ordinal);
+        Element[] element = new Element[1];
+        readDocument(getRecord(getLong(footer.documentOffsetsPosition + 8L * documentOrdinal)), classifications,
+                (documentElement, elementOrdinal) -> {
+                    if (elementOrdinal == ordinal) {
+                        element[0] = documentElement;
+                    }
+                });
+        return element[0];
+    }
+
+    @Override
+    public int getTokenCount(int ordinal) {
+        return getInt(footer.elementTokenCountsPosition + 4L * ordinal);
+    }
+
+    @Override
+    public int size() {
+        return footer.elementCount;
+    }
+
+    private int getTokenId(Classification classification, Object value) {
+        if (!isSupported(value)) {
+            return -1;
+        }
+        byte[] token = encodeToken(classification.id, value);
+        int mask = footer.hashCapacity - 1;
+        for (int slot = hash(token) & mask; ; slot = (slot + 1) & mask) {
+            int tokenId = getInt(footer.hashSlotsPosition + 4L * slot);
+            if (tokenId < 0) {
+                return -1;
+            }
+            if (equalsRecord(getLong(footer.tokenOffsetsPosition + 8L * tokenId), token)) {
+                return tokenId;
+            }
+        }
+    }
+
+    private void forEachInRange(Classification classification, Token token, IntConsumer consumer) {
+        if (classification.keyType == null) {
+            return;
+        }
+        Object value = token.getValue();
+        if (NumericRangeIndex.getKeyType(value) != classification.keyType) {
+            throw new MatchException("Data Type not supported");
+        }
+        Element element = token.getElement();
+        Double pctOf = NumericRangeIndex.getPctOf(element.getElementClassification().getElementType());
+        long lower = NumericRangeIndex.getLowerKey(value, element.getNeighborhoodRange(), pctOf);
+        long higher = NumericRangeIndex.getHigherKey(value, element.getNeighborhoodRange(), pctOf);
+
+        int low = 0;
+        int high = classification.rangeSize;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getLong(classification.rangeKeysPosition + 8L * mid) < lower) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        IntConsumer target = classification.multiValued ? new NumericRangeIndex.DistinctConsumer(consumer) : consumer;
+        for (int i = low; i < classification.rangeSize
+                && getLong(classification.rangeKeysPosition + 8L * i) <= higher; i++) {
+            target.accept(getInt(classification.rangeOrdinalsPosition + 4L * i));
+        }
+    }
+
+    private void forEachInPosting(int tokenId, IntConsumer consumer) {
+        if (tokenId < 0) {
+            return;
+        }
+        long posting = getLong(footer.postingOffsetsPosition + 8L * tokenId);
+        int length = getInt(footer.postingLengthsPosition + 4L * tokenId);
+        for (int i = 0; i < length; i++) {
+            consumer.accept(getInt(posting + 4L * i));
+        }
+    }
+
+    /**
+     * The BkTree of the token values is built on the first probe of the ElementClassification, by reading all its token
+     * values. Each value is then read again from its token record when found
+     */
+    private void forEachWithinDistance(Classification classification, Token token, IntConsumer consumer) {
+        BkTree bkTree = classification.bkTree;
+        if (bkTree == null) {
+            synchronized (classification) {
+                bkTree = classification.bkTree;
+                if (bkTree == null) {
+                    bkTree = new BkTree();
+                    for (int tokenId = classification.tokenBase;
+                         tokenId < classification.tokenBase + classification.tokenCount; tokenId++) {
+                        bkTree.add(getTokenValue(tokenId));
+                    }
+                    classification.bkTree = bkTree;
+                }
+            }
+        }
+        List<Object> values = new ArrayList<>();
+        bkTree.forEach(token.getValue(), token.getElement().getMaxEditDistance(), values::add);
+        // An element holding several of the values is only passed once
+        IntConsumer target = values.size() > 1 ? new NumericRangeIndex.DistinctConsumer(consumer) : consumer;
+        for (Object value : values) {
+            forEachInPosting(getTokenId(classification, value), target);
+        }
+    }
+
+    private Object getTokenValue(int tokenId) {
+        ByteBuffer record = getRecord(getLong(footer.tokenOffsetsPosition + 8L * tokenId));
+        // Skips the ElementClassification id
+        record.getInt();
+        return readValue(record);
+    }
+
+    private int getMaxDocumentFrequency(Classification classification) {
+        int maxDocumentFrequency = classification.maxDocumentFrequency;
+        if (maxDocumentFrequency < 0) {
+            int[] documentFrequencies = new int[classification.tokenCount];
+            for (int i = 0; i < documentFrequencies.length; i++) {
+                documentFrequencies[i] = getInt(footer.postingLengthsPosition + 4L * (classification.tokenBase + i));
+            }
+            maxDocumentFrequency = stopTokenPolicy.getMaxDocumentFrequency(classification.elementCount, documentFrequencies);
+            classification.maxDocumentFrequency = maxDocumentFrequency;
+        }
+        return maxDocumentFrequency;
+    }
+
+    private boolean equalsRecord(long position, byte[] bytes) {
+        ByteBuffer chunk = chunks[(int) (position >>> chunkShift)];
+        int offset = (int) (position & chunkMask);
+        for (int i = 0; i < bytes.length; i++) {
+            if (chunk.get(offset + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private ByteBuffer getRecord(long position) {
+        ByteBuffer record = chunks[(int) (position >>> chunkShift)].duplicate();
+        record.position((int) (position & chunkMask));
+        return record;
+    }
+
+    private int getInt(long position) {
+        return chunks[(int) (position >>> chunkShift)].getInt((int) (position & chunkMask));
+    }
+
+    private long getLong(long position) {
+        return chunks[(int) (position >>> chunkShift)].getLong((int) (position & chunkMask));
+    }
+}
@@ -0,0 +1,312 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Document;
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.Match;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * A long-lived index over a reference list of Documents.
+ * <p>
+ * The reference documents are pre-processed, tokenized and indexed once when the index is created. Each call to
+ * match only processes the probed documents, which are looked up against the index but never added to it.
+ * So the cost of a match depends on the probe and not on the size of the reference list.
+ * <p>
+ * The index can be probed by multiple threads. Documents can be added, replaced and removed by key with upsert and
+ * remove while it is probed. Only the elements of the changed document are processed, so keeping the index current
+ * costs the same irrespective of its size. Removed documents are skipped by the probes straight away, and their
+ * postings are reclaimed by a compaction run in the background on the MatchOptions executor, once the removed
+ * elements reach a fifth of the index.
+ * <p>
+ * Compaction only reclaims the postings and the removed elements. The ordinals of the removed elements are never
+ * reused, and the distinct token values they held stay in the token dictionaries and EDIT_DISTANCE trees, so an index
+ * with a steady churn of documents keeps growing. Call rebuild from time to time to index the current documents
+ * afresh, which drops all of these.
+ * <p>
+ * For reference lists too large for the heap, the index can be written to a file with write, and opened with open.
+ * The opened index memory maps the file, so that the tokens and postings stay off the heap.
+ * <p>
+ * A built index can also be saved to a file with save, and loaded back on the heap with load. Loading reads the
+ * tokens and postings as they were saved, so it does not run any PreProcessFunction or TokenizerFunction. This is
+ * much faster than building the index again from the documents. Probes of a loaded index use the default functions
+ * of the ElementType, so an index built with custom functions should be probed with documents using the same ones.
+ */
+public class MatchIndex {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MatchIndex.class);
+
+    private static final int MIN_COMPACTION_REMOVALS = 1024;
+
+    private static final double COMPACTION_RATIO = 0.2;
+
+    // Replaced by rebuild, while the probes already running carry on with the previous index
+    private volatile TokenIndex tokenIndex;
+
+    private volatile DocumentMatch documentMatch;
+
+    private final MatchOptions matchOptions;
+
+    // Ordinals of the elements of each document, by key. Built by the first update
+    private Map<String, int[]> documentOrdinals;
+
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    /**
+     * Builds the index for a list of documents
+     *
+     * @param matchWith the list of documents to match against
+     */
+    public MatchIndex(List<Document> matchWith) {
+        this(matchWith, MatchOptions.defaults());
+    }
+
+    /**
+     * Builds the index for a list of documents
+     *
+     * @param matchWith    the list of documents to match against
+     * @param matchOptions the options used to build and probe the index
+     */
+    public MatchIndex(List<Document> matchWith, MatchOptions matchOptions) {
+        this(new TokenRepo(matchOptions), matchOptions);
+        this.documentMatch.indexDocuments(matchWith.stream().map(document -> {
+            document.setSource(false);
+            return document;
+        }));
+    }
+
+    private MatchIndex(TokenIndex tokenIndex, MatchOptions matchOptions) {
+        this.tokenIndex = tokenIndex;
+        this.documentMatch = new DocumentMatch(tokenIndex, matchOptions, new MatchStatistics());
+        this.matchOptions = matchOptions;
+    }
+
+    /**
+     * Writes the index of a stream of documents to a file, which can then be opened with open.
+     * The documents are processed one at a time, and are not held on the heap
+     *
+     * @param matchWith the documents to match against
+     * @param path      the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Stream<Document> matchWith, Path path) throws IOException {
+        try (TokenIndexWriter tokenIndexWriter = new TokenIndexWriter(path)) {
+            Iterator<Document> documents = matchWith.iterator();
+            while (documents.hasNext()) {
+                tokenIndexWriter.add(documents.next());
+            }
+        }
+    }
+
+    /**
+     * Opens an index file written with write, by memory mapping it
+     *
+     * @param path the index file
+     * @return the index
+     * @throws IOException if the file cannot be read, or is not an index file
+     */
+    public static MatchIndex open(Path path) throws IOException {
+        return open(path, MatchOptions.defaults());
+    }
+
+    /**
+     * Opens an index file written with write, by memory mapping it
+     *
+     * @param path         the index file
+     * @param matchOptions the options used to probe the index
+     * @return the index
+     * @throws IOException if the file cannot be read, or is not an index file
+     */
+    public static MatchIndex open(Path path, MatchOptions matchOptions) throws IOException {
+        return new MatchIndex(MappedTokenIndex.open(path, matchOptions), matchOptions);
+    }
+
+    /**
+     * Loads an index file written with save or write on the heap, without pre-processing or tokenizing the documents
+     *
+     * @param path the index file
+     * @return the index
+     * @throws IOException if the file cannot be read, or is not an index file
+     */
+    public static MatchIndex load(Path path) throws IOException {
+        return load(path, MatchOptions.defaults());
+    }
+
+    /**
+     * Loads an index file written with save or write on the heap, without pre-processing or tokenizing the documents
+     *
+     * @param path         the index file
+     * @param matchOptions the options used to probe the index
+     * @return the index
+     * @throws IOException if the file cannot be read, or is not an index file
+     */
+    public static MatchIndex load(Path path, MatchOptions matchOptions) throws IOException {
+        return new MatchIndex(TokenIndexReader.read(path, matchOptions), matchOptions);
+    }
+
+    /**
+     * Saves this index to a file, which can be loaded with load or opened with open. The documents are written with
+     * the tokens computed when the index was built
+     *
+     * @param path the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path path) throws IOException {
+        if (!(tokenIndex instanceof TokenRepo)) {
+            throw new UnsupportedOperationException("An index opened from a file is already saved in that file");
+        }
+        write(((TokenRepo) tokenIndex).getDocuments(), path);
+    }
+
+    /**
+     * Adds a document to the index, replacing the document with the same key if there is one.
+     * The new document is indexed before the replaced one is removed, so a concurrent probe never misses both.
+     * The first update of the index scans all its elements to find the elements of each document, which blocks the
+     * other updates, but not the probes, for that time
+     *
+     * @param document the document to add
+     * @throws UnsupportedOperationException if the index was opened from a file
+     */
+    public synchronized void upsert(Document document) {
+        TokenRepo tokenRepo = getTokenRepo();
+        Map<String, int[]> ordinals = getDocumentOrdinals(tokenRepo);
+        document.setSource(false);
+        // Updates are synchronized, so the elements of the document take the next ordinals
+        int from = tokenRepo.size();
+        documentMatch.indexDocuments(Stream.of(document));
+        int[] replaced = ordinals.put(document.getKey(), IntStream.range(from, tokenRepo.size()).toArray());
+        if (replaced != null) {
+            remove(tokenRepo, replaced);
+        }
+    }
+
+    /**
+     * Removes the document with the key from the index. The first update scans the index, see upsert
+     *
+     * @param key the key of the document
+     * @return false if there is no document with the key
+     * @throws UnsupportedOperationException if the index was opened from a file
+     */
+    public synchronized boolean remove(String key) {
+        TokenRepo tokenRepo = getTokenRepo();
+        int[] removed = getDocumentOrdinals(tokenRepo).remove(key);
+        if (removed == null) {
+            return false;
+        }
+        remove(tokenRepo, removed);
+        return true;
+    }
+
+    /**
+     * Reclaims the postings of the removed documents now, instead of waiting for the background compaction
+     *
+     * @throws UnsupportedOperationException if the index was opened from a file
+     */
+    public void compact() {
+        getTokenRepo().compact();
+    }
+
+    /**
+     * Indexes the current documents afresh, in place of the index holding the removed documents. This reclaims what
+     * compaction cannot, the ordinals and the token values of the removed documents, at the cost of indexing all the
+     * documents again from their tokens. Probes keep matching against the previous index until the new one is built
+     *
+     * @throws UnsupportedOperationException if the index was opened from a file
+     */
+    public synchronized void rebuild() {
+        TokenRepo tokenRepo = new TokenRepo(matchOptions);
+        DocumentMatch rebuilt = new DocumentMatch(tokenRepo, matchOptions, documentMatch.getMatchStatistics());
+        rebuilt.indexDocuments(getTokenRepo().getDocuments().collect(Collectors.toList()).stream());
+        documentMatch = rebuilt;
+        tokenIndex = tokenRepo;
+        documentOrdinals = null;
+    }
+
+    private void remove(TokenRepo tokenRepo, int[] ordinals) {
+        for (int ordinal : ordinals) {
+            tokenRepo.remove(ordinal);
+        }
+        if (tokenRepo.getPendingRemovals() > Math.max(MIN_COMPACTION_REMOVALS, tokenRepo.size() * COMPACTION_RATIO)
+                && compacting.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(tokenRepo::compact, matchOptions.getExecutor()).whenComplete((result, e) -> {
+                compacting.set(false);
+                if (e != null) {
+                    LOGGER.error("could not compact the match index", e);
+                }
+            });
+        }
+    }
+
+    TokenRepo getTokenRepo() {
+        if (!(tokenIndex instanceof TokenRepo)) {
+            throw new UnsupportedOperationException("An index opened from a file is read only");
+        }
+        return (TokenRepo) tokenIndex;
+    }
+
+    private Map<String, int[]> getDocumentOrdinals(TokenRepo tokenRepo) {
+        if (documentOrdinals == null) {
+            Map<String, List<Integer>> ordinals = new HashMap<>();
+            for (int ordinal = 0; ordinal < tokenRepo.size(); ordinal++) {
+                Element element = tokenRepo.getElement(ordinal);
+                if (element != null && !tokenRepo.isRemoved(ordinal)) {
+                    ordinals.computeIfAbsent(element.getDocument().getKey(), key -> new ArrayList<>()).add(ordinal);
+                }
+            }
+            documentOrdinals = new HashMap<>();
+            ordinals.forEach((key, list) -> documentOrdinals.put(key, list.stream().mapToInt(Integer::intValue).toArray()));
+        }
+        return documentOrdinals;
+    }
+
+    /**
+     * @return the statistics accumulated over all the probes of this index
+     */
+    public MatchStatistics getMatchStatistics() {
+        return documentMatch.getMatchStatistics();
+    }
+
+    /**
+     * Use this to check duplicate for a new record, where it checks whether a new Document is a duplicate in the index
+     *
+     * @param document the document to match
+     * @return the list of matches for the document, empty if no match is found
+     */
+    public List<Match<Document>> match(Document document) {
+        return match(Collections.singletonList(document)).getOrDefault(document, Collections.emptyList());
+    }
+
+    /**
+     * Use this to check duplicates for bulk inserts, where a list of new Documents is checked against the index.
+     * The documents in the list are not matched with each other
+     * Data is aggregated by a given Document
+     *
+     * @param documents the list of documents to match
+     * @return a map containing the grouping of each document and its corresponding matches
+     */
+    public Map<Document, List<Match<Document>>> match(List<Document> documents) {
+        return documentMatch.probeDocuments(documents.stream())
+                .collect(Collectors.groupingBy(Match::getData));
+    }
+
+    /**
+     * Use this to check duplicates for bulk inserts of large data, where the matches are written out as they are found.
+     * The documents are read lazily, and the matches of each document are emitted as soon as it is probed. In parallel
+     * mode, all the documents are probed before the first match is emitted
+     *
+     * @param documents the stream of documents to match
+     * @return a stream of the matches of the documents
+     */
+    public Stream<Match<Document>> matchAsStream(Stream<Document> documents) {
+        return documentMatch.probeDocuments(documents);
+    }
+}
@@ -0,0 +1,189 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.ElementType;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * <p>
+ * Options that control how the match is executed, to tune the matching engine for different use cases. Most of them
+ * give the same matches and scores as the defaults, but some change the results:
+ * <ul>
+ * <li>stopTokenPolicy skips the frequent tokens when looking up candidates, so the elements found by those tokens
+ * only are not matched. The candidates found by the other tokens keep their score</li>
+ * <li>minHash only scores the candidates sharing a MinHash band, which trades some recall for less candidate work</li>
+ * <li>collapseDuplicates changes which pairs are emitted, the duplicates of a group match each other with a score of
+ * 1.0 and share the matches of the first Document of the group</li>
+ * <li>parallel lets the StopTokenPolicy see the complete index, so it can skip other tokens than in the sequential
+ * mode</li>
+ * </ul>
+ * <p>
+ * Configurable attributes
+ * <ul>
+ * <li>probeOnly - When matching a list of new Documents against an existing list, the new Documents are only looked up
+ * and never indexed. So they are not matched with each other, default false</li>
+ * <li>bitmapCutoff - Number of elements sharing an EQUALITY token, above which the token's posting list is compressed
+ * into a bitmap, default 64</li>
+ * <li>stopTokenPolicy - Skips EQUALITY tokens shared by too many elements during candidate generation,
+ * default StopTokenPolicy.none()</li>
+ * <li>parallel - Indexes all the Documents first, then matches them against the complete index in parallel.
+ * The matches found are the same as in the sequential mode, except that the StopTokenPolicy sees the complete index,
+ * default false</li>
+ * <li>executor - The Executor running the parallel tasks, default ForkJoinPool.commonPool()</li>
+ * <li>prefixFilter - Matches the tokens of an element rarest first. Once the tokens left cannot reach the threshold on
+ * their own, they only count towards the candidates already found, so only the rarest tokens look up new candidates.
+ * The matches are the same, with far fewer postings scanned when frequent tokens are common, default false</li>
+ * <li>minHash - Per ElementType, finds the candidates of EQUALITY elements from the MinHash bands they share, instead
+ * of the postings of all their tokens. Only the candidates are scored, exactly. This trades a tunable loss of recall,
+ * set by the number of bands and rows, for much less candidate work on elements with many tokens, like EMAIL
+ * and TEXT. Not enabled for any ElementType by default</li>
+ * <li>valueCache - Elements with the same ElementClassification, pre-processed value and match settings share the
+ * tokens of the first of them, and reuse its element matches while the index has not changed since, like when probing
+ * a MatchIndex or with probeOnly. This saves tokenizing and probing low-cardinality elements again, at the cost of
+ * holding the matches of each distinct value until the match completes. Not used in the sorted neighborhood mode,
+ * default false</li>
+ * <li>collapseDuplicates - When matching a list of Documents, groups the Documents which are exact duplicates after
+ * pre-processing, with the same elements, settings, threshold and blocking keys, and only matches the first Document
+ * of each group. Its matches are then expanded to all the Documents of the group, and the Documents of a group match
+ * each other with all their elements scoring 1.0. The StopTokenPolicy only counts each group once. Not used by
+ * MatchIndex nor the sorted neighborhood mode, default false</li>
+ * </ul>
+ */
+public class MatchOptions {
+
+    private final boolean probeOnly;
+    private final int bitmapCutoff;
+    private final StopTokenPolicy stopTokenPolicy;
+    private final boolean parallel;
+    private final Executor executor;
+    private final boolean prefixFilter;
+    private final Map<ElementType, MinHash> minHashes;
+    private final boolean valueCache;
+    private final boolean collapseDuplicates;
+
+    private MatchOptions(Builder builder) {
+        this.probeOnly = builder.probeOnly;
+        this.bitmapCutoff = builder.bitmapCutoff;
+        this.stopTokenPolicy = builder.stopTokenPolicy;
+        this.parallel = builder.parallel;
+        this.executor = builder.executor;
+        this.prefixFilter = builder.prefixFilter;
+        this.minHashes = Collections.unmodifiableMap(new EnumMap<>(builder.minHashes));
+        this.valueCache = builder.valueCache;
+        this.collapseDuplicates = builder.collapseDuplicates;
+    }
+
+    public static MatchOptions defaults() {
+        return new Builder().createMatchOptions();
+    }
+
+    public boolean isProbeOnly() {
+        return probeOnly;
+    }
+
+    public int getBitmapCutoff() {
+        return bitmapCutoff;
+    }
+
+    public StopTokenPolicy getStopTokenPolicy() {
+        return stopTokenPolicy;
+    }
+
+    public boolean isParallel() {
+        return parallel;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public boolean isPrefixFilter() {
+        return prefixFilter;
+    }
+
+    Map<ElementType, MinHash> getMinHashes() {
+        return minHashes;
+    }
+
+    public boolean isValueCache() {
+        return valueCache;
+    }
+
+    public boolean isCollapseDuplicates() {
+        return collapseDuplicates;
+    }
+
+    public static class Builder {
+        private boolean probeOnly = false;
+        private int bitmapCutoff = 64;
+        private StopTokenPolicy stopTokenPolicy = StopTokenPolicy.none();
+        private boolean parallel = false;
+        private Executor executor = ForkJoinPool.commonPool();
+        private boolean prefixFilter = false;
+        private final Map<ElementType, MinHash> minHashes = new EnumMap<>(ElementType.class);
+        private boolean valueCache = false;
+        private boolean collapseDuplicates = false;
+
+        public Builder setProbeOnly(boolean probeOnly) {
+            this.probeOnly = probeOnly;
+            return this;
+        }
+
+        public Builder setBitmapCutoff(int bitmapCutoff) {
+            this.bitmapCutoff = bitmapCutoff;
+            return this;
+        }
+
+        public Builder setStopTokenPolicy(StopTokenPolicy stopTokenPolicy) {
+            this.stopTokenPolicy = stopTokenPolicy;
+            return this;
+        }
+
+        public Builder setParallel(boolean parallel) {
+            this.parallel = parallel;
+            return this;
+        }
+
+        public Builder setExecutor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder setPrefixFilter(boolean prefixFilter) {
+            this.prefixFilter = prefixFilter;
+            return this;
+        }
+
+        /**
+         * Enables MinHash candidates for the elements of an ElementType. Elements with a Jaccard similarity s become
+         * candidates with a probability of 1 - (1 - s^rows)^bands
+         *
+         * @param elementType the ElementType
+         * @param bands       the number of bands, more bands find more of the similar elements
+         * @param rows        the number of rows in each band, more rows find fewer of the dissimilar elements
+         * @return the builder
+         */
+        public Builder setMinHash(ElementType elementType, int bands, int rows) {
+            this.minHashes.put(elementType, new MinHash(bands, rows));
+            return this;
+        }
+
+        public Builder setValueCache(boolean valueCache) {
+            this.valueCache = valueCache;
+            return this;
+        }
+
+        public Builder setCollapseDuplicates(boolean collapseDuplicates) {
+            this.collapseDuplicates = collapseDuplicates;
+            return this;
+        }
+
+        public MatchOptions createMatchOptions() {
+            return new MatchOptions(this);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Document;
+import com.intuit.fuzzymatcher.domain.Match;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Publishes the matches of a published stream of documents, honoring the demand of its subscriber.
+ * <p>
+ * A document is only requested from the upstream publisher once the subscriber has demand and the matches of the
+ * previous document were all delivered. So the documents are matched one at a time, and matching pauses while the
+ * subscriber falls behind, holding at most the matches of a single document. The documents are matched on the thread
+ * of the upstream publisher, and the matches are delivered by whichever thread requests or matches, one at a time.
+ * <p>
+ * Matching adds the documents to an index, so a MatchPublisher only accepts a single subscriber.
+ */
+class MatchPublisher implements Flow.Publisher<Match<Document>> {
+
+    private final Flow.Publisher<Document> documents;
+
+    private final Function<Document, Stream<Match<Document>>> matcher;
+
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+
+    /**
+     * @param documents the documents to match
+     * @param matcher   matches a document, with the documents matched before it
+     */
+    MatchPublisher(Flow.Publisher<Document> documents, Function<Document, Stream<Match<Document>>> matcher) {
+        this.documents = documents;
+        this.matcher = matcher;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Match<Document>> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("A MatchPublisher only accepts a single subscriber"));
+            return;
+        }
+        documents.subscribe(new MatchSubscription(subscriber));
+    }
+
+    /**
+     * Subscribes to the documents for the subscriber of the matches
+     */
+    private class MatchSubscription implements Flow.Subscriber<Document>, Flow.Subscription {
+
+        private final Flow.Subscriber<? super Match<Document>> subscriber;
+
+        private final Queue<Match<Document>> matches = new ConcurrentLinkedQueue<>();
+
+        private final AtomicLong requested = new AtomicLong();
+
+        // Serializes the delivery, the number of drains missed while one is running
+        private final AtomicInteger drains = new AtomicInteger();
+
+        private volatile Flow.Subscription upstream;
+
+        // A document was requested and not received yet
+        private volatile boolean awaitingDocument;
+
+        private volatile boolean done;
+
+        private volatile Throwable error;
+
+        private volatile boolean cancelled;
+
+        MatchSubscription(Flow.Subscriber<? super Match<Document>> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            upstream = subscription;
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void onNext(Document document) {
+            if (cancelled) {
+                return;
+            }
+            try {
+                matcher.apply(document).forEach(matches::offer);
+            } catch (RuntimeException e) {
+                upstream.cancel();
+                onError(e);
+                return;
+            }
+            awaitingDocument = false;
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void onComplete() {
+            done = true;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                upstream.cancel();
+                onError(new IllegalArgumentException("The number of requested matches must be positive, was " + n));
+                return;
+            }
+            requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (!cancelled) {
+                cancelled = true;
+                upstream.cancel();
+                matches.clear();
+            }
+        }
+
+        /**
+         * Delivers the matches while there is demand, then requests the next document once they are all delivered
+         */
+        private void drain() {
+            if (drains.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                while (!cancelled) {
+                    if (error != null) {
+                        cancelled = true;
+                        matches.clear();
+                        subscriber.onError(error);
+                        return;
+                    }
+                    boolean completed = done;
+                    if (completed && matches.isEmpty()) {
+                        cancelled = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    if (requested.get() == 0) {
+                        break;
+                    }
+                    Match<Document> match = matches.poll();
+                    if (match == null) {
+                        if (!completed && !awaitingDocument) {
+                            awaitingDocument = true;
+                            upstream.request(1);
+                            continue;
+                        }
+                        break;
+                    }
+                    if (requested.get() != Long.MAX_VALUE) {
+                        requested.decrementAndGet();
+                    }
+                    subscriber.onNext(match);
+                }
+                missed = drains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -2,9 +2,12 @@ package com.intuit.fuzzymatcher.component;
 
 import com.intuit.fuzzymatcher.domain.Document;
 import com.intuit.fuzzymatcher.domain.Match;
-import org.apache.commons.collections4.CollectionUtils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.*;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -19,6 +22,26 @@ import java.util.stream.Stream;
  */
 public class MatchService {
 
+    private final MatchOptions matchOptions;
+
+    private final MatchStatistics matchStatistics;
+
+    public MatchService() {
+        this(MatchOptions.defaults());
+    }
+
+    public MatchService(MatchOptions matchOptions) {
+        this.matchOptions = matchOptions;
+        this.matchStatistics = new MatchStatistics();
+    }
+
+    /**
+     * @return the statistics accumulated over all the matches run by this service
+     */
+    public MatchStatistics getMatchStatistics() {
+        return matchStatistics;
+    }
+
     /**
      * Use this for De-duplication of data, where for a given list of documents it finds duplicates
      * Data is aggregated by a given Document
@@ -27,13 +50,14 @@ public class MatchService {
      * @return a map containing the grouping of each document and its corresponding matches
      */
     public Map<Document, List<Match<Document>>> applyMatch(List<Document> documents) {
-        DocumentMatch documentMatch = new DocumentMatch();
+        DocumentMatch documentMatch = new DocumentMatch(matchOptions, matchStatistics);
         return documentMatch.matchDocuments(documents.stream())
                 .collect(Collectors.groupingBy(Match::getData));
     }
 
     /**
      * Use this to check duplicates for bulk inserts, where a list of new Documents is checked against existing list
+     * With MatchOptions probeOnly, the new Documents are not matched with each other
      * Data is aggregated by a given Document
      *
      * @param documents the list of documents to match from
@@ -41,16 +65,8 @@ public class MatchService {
      * @return a map containing the grouping of each document and its corresponding matches
      */
     public Map<Document, List<Match<Document>>> applyMatch(List<Document> documents, List<Document> matchWith) {
-        DocumentMatch documentMatch = new DocumentMatch();
-        return documentMatch.matchDocuments(Stream.concat(
-                matchWith.stream().map(document -> {
-                    document.setSource(false);
-                    return document;
-                }),
-                documents.stream().map(document -> {
-                    document.setSource(true);
-                    return document;
-                })))
+        DocumentMatch documentMatch = new DocumentMatch(matchOptions, matchStatistics);
+        return documentMatch.matchDocuments(withReferences(documents.stream(), matchWith))
                 .collect(Collectors.groupingBy(Match::getData));
     }
 
@@ -63,7 +79,6 @@ public class MatchService {
      * @return a map containing the grouping of each document and its corresponding matches
      */
     public Map<Document, List<Match<Document>>> applyMatch(Document document, List<Document> matchWith) {
-        DocumentMatch documentMatch = new DocumentMatch();
         return applyMatch(Arrays.asList(document), matchWith);
     }
 
@@ -76,7 +91,6 @@ public class MatchService {
      * @return a map containing the grouping of each document id and its corresponding matches
      */
     public Map<String, List<Match<Document>>> applyMatchByDocId(Document document, List<Document> matchWith) {
-        DocumentMatch documentMatch = new DocumentMatch();
         return applyMatchByDocId(Arrays.asList(document), matchWith);
     }
 
@@ -88,13 +102,14 @@ public class MatchService {
      * @return a map containing the grouping of each document id and its corresponding matches
      */
     public Map<String, List<Match<Document>>> applyMatchByDocId(List<Document> documents) {
-        DocumentMatch documentMatch = new DocumentMatch();
+        DocumentMatch documentMatch = new DocumentMatch(matchOptions, matchStatistics);
         return documentMatch.matchDocuments(documents.stream())
                 .collect(Collectors.groupingBy(match -> match.getData().getKey()));
     }
 
     /**
      * Use this to check duplicates for bulk inserts, where a list of new Documents is checked against existing list
+     * With MatchOptions probeOnly, the new Documents are not matched with each other
      * Data is aggregated by a given Document Id
      *
      * @param documents the list of documents to match from
@@ -102,63 +117,189 @@ public class MatchService {
      * @return a map containing the grouping of each document id and its corresponding matches
      */
     public Map<String, List<Match<Document>>> applyMatchByDocId(List<Document> documents, List<Document> matchWith) {
-        DocumentMatch documentMatch = new DocumentMatch();
-        return documentMatch.matchDocuments(Stream.concat(
+        DocumentMatch documentMatch = new DocumentMatch(matchOptions, matchStatistics);
+        return documentMatch.matchDocuments(withReferences(documents.stream(), matchWith))
+                .collect(Collectors.groupingBy(match -> match.getData().getKey()));
+    }
+
+    /**
+     * Use this for De-duplication of large data, where the matches are written out as they are found instead of being
+     * aggregated. The documents are read lazily, and the matches of each document are emitted as soon as it is matched
+     * with the documents before it, so only the index is held in memory. In parallel mode, or with collapseDuplicates,
+     * all the documents are matched before the first match is emitted
+     *
+     * @param documents the stream of documents to match against
+     * @return a stream of the matches, with each pair of matching documents in both directions
+     */
+    public Stream<Match<Document>> applyMatchAsStream(Stream<Document> documents) {
+        return new DocumentMatch(matchOptions, matchStatistics).matchDocuments(documents);
+    }
+
+    /**
+     * Use this to check duplicates for bulk inserts of large data, where a stream of new Documents is checked against
+     * existing list, and the matches are written out as they are found. The existing list is indexed first, then the
+     * new Documents are read lazily, and the matches of each of them are emitted as soon as it is matched. With
+     * MatchOptions probeOnly, the new Documents are not indexed, so they are not held in memory
+     *
+     * @param documents the stream of documents to match from
+     * @param matchWith the list of documents to match against
+     * @return a stream of the matches
+     */
+    public Stream<Match<Document>> applyMatchAsStream(Stream<Document> documents, List<Document> matchWith) {
+        return new DocumentMatch(matchOptions, matchStatistics).matchDocuments(withReferences(documents, matchWith));
+    }
+
+    /**
+     * Same as applyMatchAsStream, pushing each match to a sink as it is found
+     *
+     * @param documents the stream of documents to match against
+     * @param sink      receives the matches
+     */
+    public void applyMatch(Stream<Document> documents, Consumer<? super Match<Document>> sink) {
+        applyMatchAsStream(documents).forEach(sink);
+    }
+
+    /**
+     * Same as applyMatchAsStream, pushing each match to a sink as it is found
+     *
+     * @param documents the stream of documents to match from
+     * @param matchWith the list of documents to match against
+     * @param sink      receives the matches
+     */
+    public void applyMatch(Stream<Document> documents, List<Document> matchWith, Consumer<? super Match<Document>> sink) {
+        applyMatchAsStream(documents, matchWith).forEach(sink);
+    }
+
+    /**
+     * Use this for De-duplication of an unbounded input from a reactive source. Each document is requested from the
+     * publisher once the matches of the previous one were delivered to the subscriber, and only while the subscriber
+     * has demand, so matching pauses when the subscriber falls behind. The documents are matched one after another,
+     * whatever the parallel, collapseDuplicates and valueCache options. The returned publisher accepts a single subscriber
+     *
+     * @param documents the publisher of the documents to match against
+     * @return a publisher of the matches, with each pair of matching documents in both directions
+     */
+    public Flow.Publisher<Match<Document>> applyMatch(Flow.Publisher<Document> documents) {
+        DocumentMatch documentMatch = new DocumentMatch(matchOptions, matchStatistics);
+        return new MatchPublisher(documents, documentMatch::matchDocument);
+    }
+
+    /**
+     * Use this to check duplicates for inserts from a reactive source, where the published new Documents are checked
+     * against existing list. The existing list is indexed when the returned publisher is subscribed to, then the new
+     * Documents are matched one after another as the subscriber has demand, see applyMatch(Flow.Publisher). With
+     * MatchOptions probeOnly, the new Documents are not indexed, so the memory held does not grow with them
+     *
+     * @param documents the publisher of the documents to match from
+     * @param matchWith the list of documents to match against
+     * @return a publisher of the matches
+     */
+    public Flow.Publisher<Match<Document>> applyMatch(Flow.Publisher<Document> documents, List<Document> matchWith) {
+        DocumentMatch documentMatch = new DocumentMatch(matchOptions, matchStatistics);
+        Flow.Publisher<Document> indexedFirst = subscriber -> {
+            matchWith.forEach(document -> {
+                document.setSource(false);
+                documentMatch.matchDocument(document).forEach(match -> { });
+            });
+            documents.subscribe(subscriber);
+        };
+        return new MatchPublisher(indexedFirst, document -> {
+            document.setSource(true);
+            return documentMatch.matchDocument(document);
+        });
+    }
+
+    /**
+     * @return the reference documents followed by the source documents, with their source flag set
+     */
+    private static Stream<Document> withReferences(Stream<Document> documents, List<Document> matchWith) {
+        return Stream.concat(
                 matchWith.stream().map(document -> {
                     document.setSource(false);
                     return document;
-                }), documents.stream().map(document -> {
+                }),
+                documents.map(document -> {
                     document.setSource(true);
                     return document;
-                })))
-                .collect(Collectors.groupingBy(match -> match.getData().getKey()));
+                }));
+    }
+
+    /**
+     * Use this for De-duplication of very large data, where the documents are too many to be indexed at once
+     * The documents are sorted by each sort key with an external merge sort, and each document is only matched with
+     * the documents just before it in the sorted order, see SortedNeighborhood. A pair found by several sort keys is
+     * only returned once
+     * Data is aggregated by a given Document Id
+     *
+     * @param documents          the stream of documents to match against, read once
+     * @param sortedNeighborhood the sort keys, window and run sizes
+     * @return a map containing the grouping of each document id and its corresponding matches
+     * @throws IOException if the sorted runs cannot be written to or read from the temp directory
+     */
+    public Map<String, List<Match<Document>>> applySortedNeighborhoodMatch(
+            Stream<Document> documents, SortedNeighborhood sortedNeighborhood) throws IOException {
+        Map<String, List<Match<Document>>> result = new HashMap<>();
+        Set<List<String>> pairs = new HashSet<>();
+        try (DocumentSorter documentSorter = new DocumentSorter(sortedNeighborhood.getSortKeys(),
+                sortedNeighborhood.getRunSize(), sortedNeighborhood.getTempDirectory())) {
+            documentSorter.sort(documents);
+            for (int keyIndex = 0; keyIndex < sortedNeighborhood.getSortKeys().size(); keyIndex++) {
+                DocumentMatch documentMatch = new DocumentMatch(matchOptions, matchStatistics);
+                documentMatch.matchSortedNeighborhood(documentSorter.iterator(keyIndex), sortedNeighborhood.getWindowSize())
+                        .filter(match -> pairs.add(Arrays.asList(match.getData().getKey(), match.getMatchedWith().getKey())))
+                        .forEach(match -> result.computeIfAbsent(match.getData().getKey(), key -> new ArrayList<>()).add(match));
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return result;
+    }
+
+    /**
+     * Use this for De-duplication of large data, where each pair of matching documents is held once instead of in both
+     * directions. The match of a pair is from the document matched last, and Match.reversed gives the other direction
+     * with the same score. So the result and the scoring work are half those of applyMatch
+     *
+     * @param documents the list of documents to match against
+     * @return the list of the matches, one for each pair of matching documents
+     */
+    public List<Match<Document>> applyMatchByPairs(List<Document> documents) {
+        DocumentMatch documentMatch = new DocumentMatch(matchOptions, matchStatistics, true);
+        return documentMatch.matchDocuments(documents.stream()).collect(Collectors.toList());
     }
 
     /**
      * Use this for De-duplication of data, where for a given list of documents it finds duplicates
      * Data is aggregated by a given Document Id
+     * The documents linked by a chain of matches are grouped with a DisjointSet of the document keys, and each pair of
+     * documents is only matched and held once in its group. In parallel mode, the matches are merged in parallel
      *
      * @param documents the list of documents to match against
      * @return a set containing the grouping of all relevant matches. So if A matches B, and B matches C. They will be grouped together
      */
     public Set<Set<Match<Document>>> applyMatchByGroups(List<Document> documents) {
-        DocumentMatch documentMatch = new DocumentMatch();
-        Map<String, List<Match<Document>>> matchByKey = documentMatch.matchDocuments(documents.stream())
-                .collect(Collectors.groupingBy(match -> match.getData().getKey()));
-
-        Set<String> docKeys = new HashSet<>(matchByKey.keySet());
-        Set<Set<Match<Document>>> result = new HashSet<>();
+        DocumentMatch documentMatch = new DocumentMatch(matchOptions, matchStatistics, true);
+        List<Match<Document>> matches = documentMatch.matchDocuments(documents.stream()).collect(Collectors.toList());
 
-        docKeys.forEach(key -> {
-            Set<Match<Document>> matchGroups = new HashSet<>();
-            groupSimilar(matchByKey, key, matchGroups);
-            if (CollectionUtils.isNotEmpty(matchGroups)) {
-                result.add(matchGroups);
-            }
-        });
-        return result;
-    }
-
-    private void groupSimilar(Map<String, List<Match<Document>>> matchMap, String key, Set<Match<Document>> matchGroups) {
-        List<Match<Document>> matches = matchMap.get(key);
-        if (matches == null) {
-            return;
+        Map<String, Integer> ordinals = new HashMap<>(documents.size() * 2);
+        documents.forEach(document -> ordinals.putIfAbsent(document.getKey(), ordinals.size()));
+        DisjointSet disjointSet = new DisjointSet(ordinals.size());
+        if (matchOptions.isParallel()) {
+            documentMatch.runInChunks(matches, chunk -> {
+                chunk.forEach(match -> disjointSet.union(ordinals.get(match.getData().getKey()),
+                        ordinals.get(match.getMatchedWith().getKey())));
+                return null;
+            });
+        } else {
+            matches.forEach(match -> disjointSet.union(ordinals.get(match.getData().getKey()),
+                    ordinals.get(match.getMatchedWith().getKey())));
         }
-        matchMap.remove(key);
 
-        matches.forEach(match -> {
-            if (!containsMatch(matchGroups, match)) {
-                matchGroups.add(match);
-            }
-            String matchedWithKey = match.getMatchedWith().getKey();
-            groupSimilar(matchMap, matchedWithKey, matchGroups);
-        });
-    }
-
-    private boolean containsMatch(Set<Match<Document>> matchGroups, Match<Document> match) {
-        return matchGroups.stream()
-                .anyMatch(m -> m.getData().getKey().equals(match.getMatchedWith().getKey())
-                        && m.getMatchedWith().getKey().equals(match.getData().getKey())
-                );
+        Map<Integer, Set<Match<Document>>> groups = new HashMap<>();
+        for (Match<Document> match : matches) {
+            int root = disjointSet.find(ordinals.get(match.getData().getKey()));
+            groups.computeIfAbsent(root, key -> new HashSet<>()).add(match);
+        }
+        return new HashSet<>(groups.values());
     }
 }
@@ -0,0 +1,62 @@
+package com.intuit.fuzzymatcher.component;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters collected while matching, to understand where the match spends its work
+ * <ul>
+ * <li>probedTokens - Number of tokens looked up in the TokenRepo</li>
+ * <li>prunedTokens - Number of tokens skipped by the StopTokenPolicy</li>
+ * <li>scannedPostings - Number of candidate elements visited for all the probed tokens</li>
+ * <li>scoreUpdates - Number of times the matching token count of a candidate element was incremented</li>
+ * </ul>
+ */
+public class MatchStatistics {
+
+    private final LongAdder probedTokens = new LongAdder();
+    private final LongAdder prunedTokens = new LongAdder();
+    private final LongAdder scannedPostings = new LongAdder();
+    private final LongAdder scoreUpdates = new LongAdder();
+
+    void addProbedTokens(long count) {
+        probedTokens.add(count);
+    }
+
+    void addPrunedTokens(long count) {
+        prunedTokens.add(count);
+    }
+
+    void addScannedPostings(long count) {
+        scannedPostings.add(count);
+    }
+
+    void addScoreUpdates(long count) {
+        scoreUpdates.add(count);
+    }
+
+    public long getProbedTokens() {
+        return probedTokens.sum();
+    }
+
+    public long getPrunedTokens() {
+        return prunedTokens.sum();
+    }
+
+    public long getScannedPostings() {
+        return scannedPostings.sum();
+    }
+
+    public long getScoreUpdates() {
+        return scoreUpdates.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "MatchStatistics{" +
+                "probedTokens=" + getProbedTokens() +
+                ", prunedTokens=" + getPrunedTokens() +
+                ", scannedPostings=" + getScannedPostings() +
+                ", scoreUpdates=" + getScoreUpdates() +
+                '}';
+    }
+}
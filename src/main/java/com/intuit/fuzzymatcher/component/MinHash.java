@@ -0,0 +1,99 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Token;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * MinHash signatures of the tokens of an element, split into bands for locality sensitive hashing.
+ * <p>
+ * The signature holds, for each of bands * rows hash functions, the smallest hash of the token values. Two elements
+ * agree on one value of the signature with a probability equal to the Jaccard similarity of their token sets, and
+ * share a band when all the rows of the band agree. So two elements with a Jaccard similarity s collide in at least one
+ * band with a probability of 1 - (1 - s^rows)^bands. More bands raise the recall, more rows lower the number of
+ * dissimilar candidates.
+ * <p>
+ * The element score is matching tokens / max(n, m), which is never lower than the Jaccard similarity. Elements
+ * scoring just above a threshold t have a Jaccard similarity of at least t / (2 - t), which is the similarity the
+ * bands and rows should be tuned for.
+ */
+class MinHash {
+
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+
+    private final int bands;
+
+    private final int rows;
+
+    private final long[] seeds;
+
+    MinHash(int bands, int rows) {
+        if (bands <= 0 || rows <= 0) {
+            throw new IllegalArgumentException("MinHash bands and rows must be positive");
+        }
+        this.bands = bands;
+        this.rows = rows;
+        SplittableRandom random = new SplittableRandom(SEED);
+        this.seeds = new long[bands * rows];
+        for (int i = 0; i < seeds.length; i++) {
+            seeds[i] = random.nextLong();
+        }
+    }
+
+    int getBands() {
+        return bands;
+    }
+
+    int getRows() {
+        return rows;
+    }
+
+    /**
+     * @param similarity the Jaccard similarity of two token sets
+     * @return the probability that the two sets share at least one band
+     */
+    double getCollisionProbability(double similarity) {
+        return 1 - Math.pow(1 - Math.pow(similarity, rows), bands);
+    }
+
+    /**
+     * @param tokens the distinct tokens of an element
+     * @return one key per band, which also holds the band number. Empty if there are no tokens
+     */
+    long[] getBandKeys(List<Token> tokens) {
+        if (tokens.isEmpty()) {
+            return new long[0];
+        }
+        long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (Token token : tokens) {
+            long hash = token.getValue().hashCode();
+            for (int i = 0; i < seeds.length; i++) {
+                signature[i] = Math.min(signature[i], mix(hash ^ seeds[i]));
+            }
+        }
+        long[] bandKeys = new long[bands];
+        for (int band = 0; band < bands; band++) {
+            long key = band;
+            for (int row = 0; row < rows; row++) {
+                key = mix(key * 31 + signature[band * rows + row]);
+            }
+            bandKeys[band] = key;
+        }
+        return bandKeys;
+    }
+
+    /**
+     * The 64 bit finalizer of MurmurHash3, used as the family of hash functions with a different seed for each
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+}
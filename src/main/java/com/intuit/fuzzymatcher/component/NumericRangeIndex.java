@@ -0,0 +1,387 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.ElementType;
+import com.intuit.fuzzymatcher.exception.MatchException;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+
+/**
+ * Range index of the NEAREST_NEIGHBORS tokens of an ElementClassification.
+ * <p>
+ * Values are held as primitive long keys in a sorted array, with a parallel array of element ordinals. Integer, Long
+ * and Date (as epoch millis) values are stored as is, Double and Float values are stored with an order preserving
+ * encoding of their bits. A probe is a binary search of the lower bound followed by a scan up to the higher bound.
+ * <p>
+ * New values are appended to an unsorted buffer, which is merged into the sorted keys when it grows large.
+ * So interleaving puts and probes does not sort the index on every probe.
+ * <p>
+ * The index is not thread safe, concurrent probes are only safe while needsMerge returns false.
+ */
+class NumericRangeIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int MIN_BUFFER_MERGE_SIZE = 32;
+
+    private static final Double AGE_PCT_OF = 10D;
+    private static final Double DATE_PCT_OF = 15777e7D; // 5 years of range
+
+    enum KeyType {INTEGRAL, FLOATING_POINT}
+
+    private KeyType keyType;
+
+    private long[] keys;
+    private int[] ordinals;
+    private int size;
+
+    private long[] bufferKeys;
+    private int[] bufferOrdinals;
+    private int bufferSize;
+
+    // Set once an element holds multiple values, which then have to be de-duplicated in a probe
+    private boolean multiValued;
+
+    NumericRangeIndex() {
+        this.keys = new long[0];
+        this.ordinals = new int[0];
+        this.bufferKeys = new long[INITIAL_CAPACITY];
+        this.bufferOrdinals = new int[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Creates the index from keys already sorted, as read from a token index file
+     *
+     * @param keyType     the type of the keys
+     * @param multiValued true if an element holds multiple values
+     * @param keys        the sorted keys
+     * @param ordinals    the element ordinal of each key
+     */
+    NumericRangeIndex(KeyType keyType, boolean multiValued, long[] keys, int[] ordinals) {
+        this();
+        this.keyType = keyType;
+        this.multiValued = multiValued;
+        this.keys = keys;
+        this.ordinals = ordinals;
+        this.size = keys.length;
+    }
+
+    void put(Object value, int ordinal) {
+        KeyType valueKeyType = getKeyType(value);
+        if (keyType == null) {
+            keyType = valueKeyType;
+        } else if (keyType != valueKeyType) {
+            throw new MatchException("Data Type not supported");
+        }
+        if (bufferSize == bufferKeys.length) {
+            bufferKeys = Arrays.copyOf(bufferKeys, bufferSize * 2);
+            bufferOrdinals = Arrays.copyOf(bufferOrdinals, bufferSize * 2);
+        }
+        bufferKeys[bufferSize] = toKey(value);
+        bufferOrdinals[bufferSize] = ordinal;
+        bufferSize++;
+    }
+
+    /**
+     * Merges the buffer, so that all the values are in the sorted keys
+     */
+    void compact() {
+        if (bufferSize > 0) {
+            merge();
+        }
+    }
+
+    /**
+     * Drops the values of the removed elements
+     *
+     * @param removed tests the ordinal of an element
+     */
+    void remove(IntPredicate removed) {
+        compact();
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (!removed.test(ordinals[i])) {
+                keys[kept] = keys[i];
+                ordinals[kept++] = ordinals[i];
+            }
+        }
+        if (kept < size) {
+            keys = Arrays.copyOf(keys, kept);
+            ordinals = Arrays.copyOf(ordinals, kept);
+            size = kept;
+        }
+    }
+
+    /**
+     * @return the type of the keys, null if the index is empty
+     */
+    KeyType getKeyType() {
+        return keyType;
+    }
+
+    /**
+     * Marks the index as holding multiple values for an element. It is set by the caller from the tokens of the
+     * element, as the values of concurrent puts can interleave
+     */
+    void setMultiValued() {
+        multiValued = true;
+    }
+
+    boolean isMultiValued() {
+        return multiValued;
+    }
+
+    /**
+     * @return the number of values in the sorted keys
+     */
+    int size() {
+        return size;
+    }
+
+    long getKey(int index) {
+        return keys[index];
+    }
+
+    int getOrdinal(int index) {
+        return ordinals[index];
+    }
+
+    /**
+     * @return true if the next probe merges the buffer into the sorted keys, and so modifies the index
+     */
+    boolean needsMerge() {
+        return bufferSize > Math.max(MIN_BUFFER_MERGE_SIZE, (int) Math.sqrt(size));
+    }
+
+    /**
+     * Passes the ordinal of every element with a value within the neighborhood range of the probed value
+     *
+     * @param value    the probed value
+     * @param pct      the neighborhood range
+     * @param pctOf    the value the range is calculated from, if null the range is a percent of the probed value
+     * @param consumer the consumer of element ordinals
+     */
+    void forEach(Object value, double pct, Double pctOf, IntConsumer consumer) {
+        KeyType valueKeyType = getKeyType(value);
+        if (keyType == null) {
+            return;
+        }
+        if (keyType != valueKeyType) {
+            throw new MatchException("Data Type not supported");
+        }
+        long lower = getLowerKey(value, pct, pctOf);
+        long higher = getHigherKey(value, pct, pctOf);
+
+        if (needsMerge()) {
+            merge();
+        }
+
+        IntConsumer target = multiValued ? new DistinctConsumer(consumer) : consumer;
+        for (int i = lowerBound(lower); i < size && keys[i] <= higher; i++) {
+            target.accept(ordinals[i]);
+        }
+        for (int i = 0; i < bufferSize; i++) {
+            if (bufferKeys[i] >= lower && bufferKeys[i] <= higher) {
+                target.accept(bufferOrdinals[i]);
+            }
+        }
+    }
+
+    private int lowerBound(long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void merge() {
+        sort(bufferKeys, bufferOrdinals, 0, bufferSize - 1);
+        long[] mergedKeys = new long[size + bufferSize];
+        int[] mergedOrdinals = new int[size + bufferSize];
+        int i = 0, j = 0, k = 0;
+        while (i < size && j < bufferSize) {
+            if (keys[i] <= bufferKeys[j]) {
+                mergedKeys[k] = keys[i];
+                mergedOrdinals[k++] = ordinals[i++];
+            } else {
+                mergedKeys[k] = bufferKeys[j];
+                mergedOrdinals[k++] = bufferOrdinals[j++];
+            }
+        }
+        for (; i < size; i++, k++) {
+            mergedKeys[k] = keys[i];
+            mergedOrdinals[k] = ordinals[i];
+        }
+        for (; j < bufferSize; j++, k++) {
+            mergedKeys[k] = bufferKeys[j];
+            mergedOrdinals[k] = bufferOrdinals[j];
+        }
+        keys = mergedKeys;
+        ordinals = mergedOrdinals;
+        size = k;
+        bufferSize = 0;
+    }
+
+    private static void sort(long[] keys, int[] ordinals, int from, int to) {
+        while (from < to) {
+            long pivot = keys[(from + to) >>> 1];
+            int i = from, j = to;
+            while (i <= j) {
+                while (keys[i] < pivot) i++;
+                while (keys[j] > pivot) j--;
+                if (i <= j) {
+                    long key = keys[i];
+                    keys[i] = keys[j];
+                    keys[j] = key;
+                    int ordinal = ordinals[i];
+                    ordinals[i] = ordinals[j];
+                    ordinals[j] = ordinal;
+                    i++;
+                    j--;
+                }
+            }
+            // Recurse on the smaller half to bound the stack depth
+            if (j - from < to - i) {
+                sort(keys, ordinals, from, j);
+                from = i;
+            } else {
+                sort(keys, ordinals, i, to);
+                to = j;
+            }
+        }
+    }
+
+    /**
+     * @param elementType the type of the probed element
+     * @return the value the neighborhood range is calculated from, null if it is a percent of the probed value
+     */
+    static Double getPctOf(ElementType elementType) {
+        switch (elementType) {
+            case AGE:
+                return AGE_PCT_OF;
+            case DATE:
+                return DATE_PCT_OF;
+            default:
+                return null;
+        }
+    }
+
+    static KeyType getKeyType(Object value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Date) {
+            return KeyType.INTEGRAL;
+        } else if (value instanceof Double || value instanceof Float) {
+            return KeyType.FLOATING_POINT;
+        }
+        throw new MatchException("Data Type not supported");
+    }
+
+    static long toKey(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        } else if (value instanceof Double || value instanceof Float) {
+            return toKey(((Number) value).doubleValue());
+        }
+        return ((Number) value).longValue();
+    }
+
+    /**
+     * Maps a double to a long, so that the longs sort in the same order as Double.compare
+     */
+    private static long toKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    /**
+     * Maps a key back to a value with the same key, a Long for INTEGRAL keys and a Double for FLOATING_POINT keys
+     */
+    static Object fromKey(KeyType keyType, long key) {
+        if (keyType == KeyType.INTEGRAL) {
+            return key;
+        }
+        return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+    }
+
+    // The bounds are narrowed to the type of the value the same way as a boxed Number would be
+    static long getLowerKey(Object value, double pct, Double pctOf) {
+        double number = getDoubleValue(value);
+        return toBoundKey(value, number - getRange(number, pct, pctOf));
+    }
+
+    static long getHigherKey(Object value, double pct, Double pctOf) {
+        double number = getDoubleValue(value);
+        return toBoundKey(value, number + getRange(number, pct, pctOf));
+    }
+
+    private static double getDoubleValue(Object value) {
+        return value instanceof Date ? ((Date) value).getTime() : ((Number) value).doubleValue();
+    }
+
+    private static double getRange(double number, double pct, Double pctOf) {
+        double dPctOf = pctOf != null ? pctOf : number;
+        return Math.abs(dPctOf * (1.0 - pct));
+    }
+
+    private static long toBoundKey(Object value, double bound) {
+        if (value instanceof Integer) {
+            return (int) bound;
+        } else if (value instanceof Float) {
+            return toKey((double) (float) bound);
+        } else if (value instanceof Double) {
+            return toKey(bound);
+        }
+        return (long) bound;
+    }
+
+    /**
+     * Passes an ordinal only the first time it is seen in a probe, using an open addressing set of ordinals
+     */
+    static class DistinctConsumer implements IntConsumer {
+        private final IntConsumer consumer;
+        private int[] seen = new int[INITIAL_CAPACITY];
+        private int seenSize;
+
+        DistinctConsumer(IntConsumer consumer) {
+            this.consumer = consumer;
+            Arrays.fill(seen, -1);
+        }
+
+        @Override
+        public void accept(int ordinal) {
+            if (add(ordinal)) {
+                consumer.accept(ordinal);
+            }
+        }
+
+        private boolean add(int ordinal) {
+            int mask = seen.length - 1;
+            int slot = (ordinal * 0x9E3779B9) & mask;
+            for (; seen[slot] != -1; slot = (slot + 1) & mask) {
+                if (seen[slot] == ordinal) {
+                    return false;
+                }
+            }
+            seen[slot] = ordinal;
+            if (++seenSize * 2 > seen.length) {
+                int[] old = seen;
+                seen = new int[old.length * 2];
+                Arrays.fill(seen, -1);
+                seenSize = 0;
+                for (int value : old) {
+                    if (value != -1) {
+                        add(value);
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.intuit.fuzzymatcher.component;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of element ordinals, used for tokens shared by a large number of elements.
+ * <p>
+ * Follows the roaring bitmap layout. Ordinals are split in chunks by their high 16 bits, and each chunk holds its low
+ * 16 bits either in a sorted char array while it is sparse, or in a 65536 bit bitmap once it is dense.
+ */
+class PostingBitmap {
+
+    private static final int ARRAY_CONTAINER_MAX = 4096;
+    private static final int BITMAP_WORDS = 1024;
+
+    private char[] keys;
+    // Each container is either a sorted char[] or a long[] bitmap
+    private Object[] containers;
+    private int[] cardinalities;
+    private int chunkCount;
+    private int size;
+
+    PostingBitmap() {
+        this.keys = new char[1];
+        this.containers = new Object[1];
+        this.cardinalities = new int[1];
+    }
+
+    PostingBitmap(int[] ordinals, int length) {
+        this();
+        for (int i = 0; i < length; i++) {
+            add(ordinals[i]);
+        }
+    }
+
+    void add(int ordinal) {
+        char key = (char) (ordinal >>> 16);
+        char low = (char) ordinal;
+        int chunk = findChunk(key);
+        if (chunk < 0) {
+            chunk = insertChunk(-chunk - 1, key);
+        }
+        Object container = containers[chunk];
+        if (container instanceof long[]) {
+            long[] bitmap = (long[]) container;
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) == 0) {
+                bitmap[low >>> 6] |= bit;
+                cardinalities[chunk]++;
+                size++;
+            }
+        } else {
+            char[] array = (char[]) container;
+            int cardinality = cardinalities[chunk];
+            int index = cardinality > 0 && array[cardinality - 1] < low
+                    ? -cardinality - 1
+                    : Arrays.binarySearch(array, 0, cardinality, low);
+            if (index >= 0) {
+                return;
+            }
+            index = -index - 1;
+            if (cardinality == ARRAY_CONTAINER_MAX) {
+                long[] bitmap = toBitmap(array, cardinality);
+                bitmap[low >>> 6] |= 1L << low;
+                containers[chunk] = bitmap;
+            } else {
+                if (cardinality == array.length) {
+                    array = Arrays.copyOf(array, Math.min(ARRAY_CONTAINER_MAX, cardinality + (cardinality >> 1) + 1));
+                    containers[chunk] = array;
+                }
+                System.arraycopy(array, index, array, index + 1, cardinality - index);
+                array[index] = low;
+            }
+            cardinalities[chunk]++;
+            size++;
+        }
+    }
+
+    boolean contains(int ordinal) {
+        int chunk = findChunk((char) (ordinal >>> 16));
+        if (chunk < 0) {
+            return false;
+        }
+        char low = (char) ordinal;
+        Object container = containers[chunk];
+        if (container instanceof long[]) {
+            return (((long[]) container)[low >>> 6] & (1L << low)) != 0;
+        }
+        return Arrays.binarySearch((char[]) container, 0, cardinalities[chunk], low) >= 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Passes all the ordinals in ascending order to the consumer
+     *
+     * @param consumer the consumer of element ordinals
+     */
+    void forEach(IntConsumer consumer) {
+        for (int chunk = 0; chunk < chunkCount; chunk++) {
+            int high = keys[chunk] << 16;
+            Object container = containers[chunk];
+            if (container instanceof long[]) {
+                long[] bitmap = (long[]) container;
+                for (int word = 0; word < BITMAP_WORDS; word++) {
+                    long bits = bitmap[word];
+                    while (bits != 0) {
+                        consumer.accept(high | (word << 6) | Long.numberOfTrailingZeros(bits));
+                        bits &= bits - 1;
+                    }
+                }
+            } else {
+                char[] array = (char[]) container;
+                for (int i = 0; i < cardinalities[chunk]; i++) {
+                    consumer.accept(high | array[i]);
+                }
+            }
+        }
+    }
+
+    private int findChunk(char key) {
+        // Ordinals are mostly added in ascending order, so the last chunk is checked first
+        if (chunkCount > 0 && keys[chunkCount - 1] == key) {
+            return chunkCount - 1;
+        }
+        return Arrays.binarySearch(keys, 0, chunkCount, key);
+    }
+
+    private int insertChunk(int index, char key) {
+        if (chunkCount == keys.length) {
+            keys = Arrays.copyOf(keys, chunkCount * 2);
+            containers = Arrays.copyOf(containers, chunkCount * 2);
+            cardinalities = Arrays.copyOf(cardinalities, chunkCount * 2);
+        }
+        System.arraycopy(keys, index, keys, index + 1, chunkCount - index);
+        System.arraycopy(containers, index, containers, index + 1, chunkCount - index);
+        System.arraycopy(cardinalities, index, cardinalities, index + 1, chunkCount - index);
+        keys[index] = key;
+        containers[index] = new char[4];
+        cardinalities[index] = 0;
+        chunkCount++;
+        return index;
+    }
+
+    private static long[] toBitmap(char[] array, int cardinality) {
+        long[] bitmap = new long[BITMAP_WORDS];
+        for (int i = 0; i < cardinality; i++) {
+            bitmap[array[i] >>> 6] |= 1L << array[i];
+        }
+        return bitmap;
+    }
+}
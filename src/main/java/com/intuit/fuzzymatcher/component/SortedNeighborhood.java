@@ -0,0 +1,156 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Document;
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.ElementType;
+import com.intuit.fuzzymatcher.domain.Token;
+import com.intuit.fuzzymatcher.exception.MatchException;
+import org.apache.commons.lang3.StringUtils;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * <p>
+ * Options of the sorted neighborhood match, for de-duplication of lists too large to be indexed as a whole.
+ * <p>
+ * The documents are sorted by a key, with an external merge sort which spills sorted runs of documents to disk. Each
+ * document is then only matched with the documents just before it in the sorted order, within a sliding window. Only
+ * the documents of the window are indexed, so the memory does not depend on the size of the list, and the time is
+ * close to linear. Documents only match if their keys sort close to each other, so each sort key is a separate pass,
+ * and the matches of all the passes are put together.
+ * <p>
+ * Configurable attributes
+ * <ul>
+ * <li>sortKeys - The keys the documents are sorted by, one pass per key. A key can be made of several parts, like the
+ * soundex of NAME followed by the prefix of PHONE, see tokens and preProcessedValue</li>
+ * <li>windowSize - The number of documents in the window, each document is matched with the windowSize - 1 documents
+ * before it, default 10</li>
+ * <li>runSize - The number of documents sorted in memory, before they are spilled to disk as a sorted run, default
+ * 100000. A list which fits in a single run is never written to disk</li>
+ * <li>tempDirectory - The directory of the sorted runs, default java.io.tmpdir</li>
+ * </ul>
+ * Documents read back from the sorted runs are created with their pre-processed values and the default
+ * TokenizerFunction of their ElementType, the same way as documents loaded from a token index file.
+ */
+public class SortedNeighborhood {
+
+    private static final String KEY_SEPARATOR = "\u0000";
+
+    private final List<Function<Document, String>> sortKeys;
+    private final int windowSize;
+    private final int runSize;
+    private final Path tempDirectory;
+
+    private SortedNeighborhood(Builder builder) {
+        this.sortKeys = Collections.unmodifiableList(new ArrayList<>(builder.sortKeys));
+        this.windowSize = builder.windowSize;
+        this.runSize = builder.runSize;
+        this.tempDirectory = builder.tempDirectory;
+    }
+
+    public List<Function<Document, String>> getSortKeys() {
+        return sortKeys;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getRunSize() {
+        return runSize;
+    }
+
+    public Path getTempDirectory() {
+        return tempDirectory;
+    }
+
+    /**
+     * A sort key part made of the tokens of the first element of a type, like the soundex codes of a NAME
+     *
+     * @param elementType the ElementType of the element
+     * @param length      the max length of the key part
+     * @return the token values joined by a space, empty if the document has no such element
+     */
+    public static Function<Document, String> tokens(ElementType elementType, int length) {
+        return document -> getElement(document, elementType)
+                .map(element -> StringUtils.left(((List<Token>) element.getTokens()).stream()
+                        .map(token -> String.valueOf(token.getValue()))
+                        .collect(Collectors.joining(" ")), length))
+                .orElse(StringUtils.EMPTY);
+    }
+
+    /**
+     * A sort key part made of the pre-processed value of the first element of a type, like the prefix of a PHONE
+     *
+     * @param elementType the ElementType of the element
+     * @param length      the max length of the key part
+     * @return the start of the pre-processed value, empty if the document has no such element
+     */
+    public static Function<Document, String> preProcessedValue(ElementType elementType, int length) {
+        return document -> getElement(document, elementType)
+                .map(element -> StringUtils.left(Objects.toString(element.getPreProcessedValue()), length))
+                .orElse(StringUtils.EMPTY);
+    }
+
+    private static Optional<Element> getElement(Document document, ElementType elementType) {
+        return document.getPreProcessedElement().stream()
+                .filter(element -> element.getElementClassification().getElementType() == elementType)
+                .findFirst();
+    }
+
+    public static class Builder {
+        private final List<Function<Document, String>> sortKeys = new ArrayList<>();
+        private int windowSize = 10;
+        private int runSize = 100_000;
+        private Path tempDirectory = Paths.get(System.getProperty("java.io.tmpdir"));
+
+        /**
+         * Adds a pass sorted by a key, made of the given parts in order
+         *
+         * @param parts the parts of the sort key
+         * @return the builder
+         */
+        @SafeVarargs
+        public final Builder addSortKey(Function<Document, String>... parts) {
+            List<Function<Document, String>> keyParts = Arrays.asList(parts);
+            this.sortKeys.add(document -> keyParts.stream()
+                    .map(part -> part.apply(document))
+                    .collect(Collectors.joining(KEY_SEPARATOR)));
+            return this;
+        }
+
+        public Builder setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        public Builder setRunSize(int runSize) {
+            this.runSize = runSize;
+            return this;
+        }
+
+        public Builder setTempDirectory(Path tempDirectory) {
+            this.tempDirectory = tempDirectory;
+            return this;
+        }
+
+        public SortedNeighborhood createSortedNeighborhood() {
+            if (sortKeys.isEmpty()) {
+                throw new MatchException("At least one sort key is required");
+            }
+            if (windowSize < 2 || runSize < 1) {
+                throw new MatchException("The window size must be at least 2, and the run size positive");
+            }
+            return new SortedNeighborhood(this);
+        }
+    }
+}
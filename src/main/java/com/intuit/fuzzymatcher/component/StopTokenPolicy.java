@@ -0,0 +1,96 @@
+package com.intuit.fuzzymatcher.component;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A functional interface to limit the document frequency of EQUALITY tokens used for candidate generation.
+ * <p>
+ * Tokens shared by a large number of elements, like the soundex code of "street" in addresses, do not help in finding
+ * a match, but every element sharing them becomes a candidate. Tokens above the limit are skipped when looking up new
+ * candidates, and only counted for the candidates found by the other tokens, so the score of a candidate is unchanged.
+ */
+public interface StopTokenPolicy {
+
+    /**
+     * @param elementCount        the number of elements indexed for an ElementClassification
+     * @param documentFrequencies the number of elements sharing each distinct token of the ElementClassification
+     * @return the max number of elements a token can be shared with, to be used for candidate generation
+     */
+    int getMaxDocumentFrequency(int elementCount, int[] documentFrequencies);
+
+    /**
+     * The document frequencies of all the tokens are collected for a policy using them, each time the index grows by
+     * 1/16. A policy only using the elementCount is called with no document frequencies, on every probed token.
+     *
+     * @return true if the policy uses the documentFrequencies
+     */
+    default boolean isDocumentFrequencyBased() {
+        return true;
+    }
+
+    /**
+     * This is the default policy, where no token is skipped
+     *
+     * @return the policy which does not skip any token
+     */
+    static StopTokenPolicy none() {
+        return ofElementCount(elementCount -> Integer.MAX_VALUE);
+    }
+
+    /**
+     * Skips the tokens shared by more than a fixed number of elements
+     *
+     * @param maxDocumentFrequency the max number of elements a token can be shared with
+     * @return the policy with an absolute cap
+     */
+    static StopTokenPolicy absoluteCap(int maxDocumentFrequency) {
+        return ofElementCount(elementCount -> maxDocumentFrequency);
+    }
+
+    /**
+     * Skips the tokens with a document frequency above the given percentile of all the tokens in an ElementClassification
+     *
+     * @param percentile value between 0.0 - 1.0, eg 0.999 skips the 0.1% most frequent tokens
+     * @return the policy with a percentile cap
+     */
+    static StopTokenPolicy percentile(double percentile) {
+        return (elementCount, documentFrequencies) -> {
+            if (documentFrequencies.length == 0) {
+                return Integer.MAX_VALUE;
+            }
+            int[] sorted = documentFrequencies.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        };
+    }
+
+    /**
+     * Skips the tokens with an inverse document frequency, log(elementCount / documentFrequency), below the floor
+     *
+     * @param minIdf the min inverse document frequency of a token
+     * @return the policy with an IDF floor
+     */
+    static StopTokenPolicy idfFloor(double minIdf) {
+        return ofElementCount(elementCount -> (int) Math.floor(elementCount / Math.exp(minIdf)));
+    }
+
+    /**
+     * @param maxDocumentFrequency the max number of elements a token can be shared with, by elementCount
+     * @return the policy which does not use the documentFrequencies
+     */
+    private static StopTokenPolicy ofElementCount(IntUnaryOperator maxDocumentFrequency) {
+        return new StopTokenPolicy() {
+            @Override
+            public int getMaxDocumentFrequency(int elementCount, int[] documentFrequencies) {
+                return maxDocumentFrequency.applyAsInt(elementCount);
+            }
+
+            @Override
+            public boolean isDocumentFrequencyBased() {
+                return false;
+            }
+        };
+    }
+}
@@ -0,0 +1,104 @@
+package com.intuit.fuzzymatcher.component;
+
+import java.util.Arrays;
+
+/**
+ * Interns the distinct token values of an ElementClassification into dense int ids.
+ * Uses open addressing with linear probing, so that no boxed ids or map entries are allocated per token.
+ */
+class TokenDictionary {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private Object[] keys;
+    private int[] ids;
+    private Object[] values;
+    private int size;
+
+    TokenDictionary() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param initialCapacity the initial number of slots, a power of two
+     */
+    TokenDictionary(int initialCapacity) {
+        this.keys = new Object[initialCapacity];
+        this.ids = new int[initialCapacity];
+        this.values = new Object[initialCapacity];
+    }
+
+    /**
+     * @param value the token value
+     * @return the id of the token value, or -1 if the value is not present
+     */
+    int getId(Object value) {
+        int mask = keys.length - 1;
+        for (int slot = hash(value) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(value)) {
+                return ids[slot];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param value the token value
+     * @return the id of the token value, a new id is assigned if the value is not present
+     */
+    int getOrAdd(Object value) {
+        int mask = keys.length - 1;
+        int slot = hash(value) & mask;
+        for (; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (keys[slot].equals(value)) {
+                return ids[slot];
+            }
+        }
+        int id = size++;
+        keys[slot] = value;
+        ids[slot] = id;
+        if (id == values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[id] = value;
+        if (size * 2 > keys.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * @param id the token id
+     * @return the token value for the id
+     */
+    Object getValue(int id) {
+        return values[id];
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        Object[] oldKeys = keys;
+        int[] oldIds = ids;
+        keys = new Object[oldKeys.length * 2];
+        ids = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = hash(oldKeys[i]) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+
+    private static int hash(Object value) {
+        int h = value.hashCode();
+        return h ^ (h >>> 16);
+    }
+}
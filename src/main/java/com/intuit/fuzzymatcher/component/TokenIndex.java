@@ -0,0 +1,80 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.Token;
+
+import java.util.function.IntConsumer;
+
+/**
+ * The index of tokens probed by ElementMatch. Elements in the index are identified by a dense int ordinal, so a probe
+ * only works with ordinals and the Element is looked up for the candidates that match.
+ * <p>
+ * TokenRepo holds the index on the heap, MappedTokenIndex reads it from a memory mapped file.
+ */
+interface TokenIndex {
+
+    /**
+     * Adds all the tokens of an element
+     *
+     * @param element the element to index
+     */
+    void put(Element element);
+
+    /**
+     * Passes the ordinal of each element matching the token to the consumer
+     *
+     * @param token    the token to look up
+     * @param consumer the consumer of element ordinals
+     */
+    void forEach(Token token, IntConsumer consumer);
+
+    /**
+     * Passes each of the candidate ordinals holding the token to the consumer. This looks up the candidates in the
+     * posting of the token, instead of scanning the whole posting with forEach. Only EQUALITY tokens are supported
+     *
+     * @param token      the EQUALITY token to look up
+     * @param candidates the ordinals of the candidate elements
+     * @param count      the number of candidates in the array
+     * @param consumer   the consumer of the candidate ordinals holding the token
+     */
+    void forEachCandidate(Token token, int[] candidates, int count, IntConsumer consumer);
+
+    /**
+     * Passes the ordinal of each element sharing a MinHash band with the element to the consumer, when MinHash is
+     * enabled for its ElementType. An ordinal is passed once for every band shared
+     *
+     * @param element  the EQUALITY element to look up
+     * @param consumer the consumer of element ordinals
+     * @return false if the index holds no MinHash bands for the element, so the candidates are found from its tokens
+     */
+    boolean forEachSimilar(Element element, IntConsumer consumer);
+
+    /**
+     * @param token the token to look up
+     * @return the number of elements holding the token, 0 for NEAREST_NEIGHBORS and EDIT_DISTANCE tokens
+     */
+    int getDocumentFrequency(Token token);
+
+    /**
+     * @param token the token to look up
+     * @return true if the token is shared by more elements than allowed by the StopTokenPolicy
+     */
+    boolean isStopToken(Token token);
+
+    /**
+     * @param ordinal the ordinal of an element in the index
+     * @return the element, null if it was removed from the index
+     */
+    Element getElement(int ordinal);
+
+    /**
+     * @param ordinal the ordinal of an element in the index
+     * @return the number of tokens of the element
+     */
+    int getTokenCount(int ordinal);
+
+    /**
+     * @return the number of elements in the index
+     */
+    int size();
+}
@@ -0,0 +1,225 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.Token;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import static com.intuit.fuzzymatcher.component.IndexFileFormat.*;
+
+/**
+ * Loads a token index file written by TokenIndexWriter into a TokenRepo on the heap.
+ * <p>
+ * The sections of the file are read in order through a large buffer, and the token dictionaries, postings and range
+ * keys are added to the repo as they are. Elements are created with their stored pre-processed value, and their tokens
+ * are restored from the postings and range keys, so no PreProcessFunction or TokenizerFunction runs while loading, nor
+ * when the MinHash bands are computed or the loaded documents are written again.
+ */
+class TokenIndexReader {
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final long size;
+
+    private ByteBuffer buffer;
+
+    // File position of the first byte in the buffer
+    private long bufferPosition;
+
+    private TokenIndexReader(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.size = channel.size();
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.buffer.limit(0);
+    }
+
+    /**
+     * Reads a token index file
+     *
+     * @param path         the file written by TokenIndexWriter
+     * @param matchOptions the options used to probe the index
+     * @return the repo holding all the documents of the file
+     * @throws IOException if the file cannot be read, or is not a token index file
+     */
+    static TokenRepo read(Path path, MatchOptions matchOptions) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new TokenIndexReader(path, channel).read(matchOptions);
+        }
+    }
+
+    private TokenRepo read(MatchOptions matchOptions) throws IOException {
+        if (size < HEADER_SIZE + FOOTER_SIZE) {
+            throw new IOException("Not a token index file: " + path);
+        }
+        readHeader(at(0, HEADER_SIZE), path);
+        Footer footer = new Footer(at(size - FOOTER_SIZE, FOOTER_SIZE));
+        Classification[] classifications = readRecord(footer.classificationsPosition,
+                size - FOOTER_SIZE - footer.classificationsPosition,
+                record -> Classification.readAll(record, footer.classificationCount));
+
+        // The offsets are written after the sections they point to, so they are read first
+        long[] documentOffsets = readLongs(footer.documentOffsetsPosition, footer.documentCount);
+        int[] tokenCounts = readInts(footer.elementTokenCountsPosition, footer.elementCount);
+        long[] tokenOffsets = readLongs(footer.tokenOffsetsPosition, footer.tokenCount);
+        long[] postingOffsets = readLongs(footer.postingOffsetsPosition, footer.tokenCount);
+        int[] postingLengths = readInts(footer.postingLengthsPosition, footer.tokenCount);
+
+        Element[] elements = new Element[footer.elementCount];
+        for (int documentOrdinal = 0; documentOrdinal < footer.documentCount; documentOrdinal++) {
+            long end = documentOrdinal + 1 < footer.documentCount
+                    ? documentOffsets[documentOrdinal + 1] : footer.documentOffsetsPosition;
+            readRecord(documentOffsets[documentOrdinal], end - documentOffsets[documentOrdinal], record ->
+                    readDocument(record, classifications, (element, ordinal) -> elements[ordinal] = element));
+        }
+
+        Object[] tokenValues = new Object[footer.tokenCount];
+        for (int tokenId = 0; tokenId < footer.tokenCount; tokenId++) {
+            long end = tokenId + 1 < footer.tokenCount ? tokenOffsets[tokenId + 1] : footer.tokenOffsetsPosition;
+            tokenValues[tokenId] = readRecord(tokenOffsets[tokenId], end - tokenOffsets[tokenId], record -> {
+                record.getInt(); // ElementClassification id
+                return readValue(record);
+            });
+        }
+
+        // The stored tokens are restored on the elements, so that they are never tokenized again by the default
+        // TokenizerFunction, when the MinHash bands are computed or the index is saved again
+        List<List<Token>> elementTokens = new ArrayList<>(footer.elementCount);
+        for (int elementOrdinal = 0; elementOrdinal < footer.elementCount; elementOrdinal++) {
+            elementTokens.add(new ArrayList<>(tokenCounts[elementOrdinal]));
+        }
+        int[][] postings = new int[footer.tokenCount][];
+        List<NumericRangeIndex> rangeIndexes = new ArrayList<>(classifications.length);
+        for (Classification classification : classifications) {
+            for (int tokenId = classification.tokenBase; tokenId < classification.tokenBase + classification.tokenCount; tokenId++) {
+                int[] posting = readInts(postingOffsets[tokenId], postingLengths[tokenId]);
+                for (int ordinal : posting) {
+                    elementTokens.get(ordinal).add(new Token<>(tokenValues[tokenId], elements[ordinal]));
+                }
+                postings[tokenId] = posting;
+            }
+            NumericRangeIndex rangeIndex = null;
+            if (classification.keyType != null) {
+                long[] keys = readLongs(classification.rangeKeysPosition, classification.rangeSize);
+                int[] ordinals = readInts(classification.rangeOrdinalsPosition, classification.rangeSize);
+                for (int i = 0; i < keys.length; i++) {
+                    elementTokens.get(ordinals[i]).add(new Token<>(
+                            NumericRangeIndex.fromKey(classification.keyType, keys[i]), elements[ordinals[i]]));
+                }
+                rangeIndex = new NumericRangeIndex(classification.keyType, classification.multiValued, keys, ordinals);
+            }
+            rangeIndexes.add(rangeIndex);
+        }
+
+        TokenRepo tokenRepo = new TokenRepo(matchOptions);
+        // Element ordinals are assigned in the order of the documents, so registering them keeps the same ordinals
+        for (int elementOrdinal = 0; elementOrdinal < footer.elementCount; elementOrdinal++) {
+            Element element = elements[elementOrdinal];
+            element.setTokens(elementTokens.get(elementOrdinal));
+            tokenRepo.register(element, tokenCounts[elementOrdinal]);
+        }
+
+        for (int i = 0; i < classifications.length; i++) {
+            Classification classification = classifications[i];
+            if (classification.elementCount == 0) {
+                continue;
+            }
+            tokenRepo.putClassification(classification.elementClassification, classification.matchType,
+                    classification.elementCount);
+            for (int tokenId = classification.tokenBase; tokenId < classification.tokenBase + classification.tokenCount; tokenId++) {
+                tokenRepo.putPosting(classification.elementClassification, tokenValues[tokenId], postings[tokenId]);
+            }
+            if (rangeIndexes.get(i) != null) {
+                tokenRepo.putRange(classification.elementClassification, rangeIndexes.get(i));
+            }
+        }
+        return tokenRepo;
+    }
+
+    /**
+     * Reads a record whose exact length is only known once it is parsed. The buffer is grown and the record read
+     * again if it is larger than the buffer
+     *
+     * @param position  the position of the record
+     * @param maxLength the number of bytes up to the next section or record, including any padding
+     * @param reader    parses the record
+     */
+    private <T> T readRecord(long position, long maxLength, Function<ByteBuffer, T> reader) throws IOException {
+        int length = (int) Math.min(maxLength, buffer.capacity());
+        while (true) {
+            try {
+                return reader.apply(at(position, length));
+            } catch (BufferUnderflowException e) {
+                if (length >= maxLength) {
+                    throw new IOException("Truncated record in token index file: " + path, e);
+                }
+                length = (int) Math.min(maxLength, 2L * length);
+            }
+        }
+    }
+
+    private int[] readInts(long position, int count) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; ) {
+            int length = Math.min(count - i, BUFFER_SIZE / 4);
+            at(position + 4L * i, 4 * length).asIntBuffer().get(values, i, length);
+            i += length;
+        }
+        return values;
+    }
+
+    private long[] readLongs(long position, int count) throws IOException {
+        long[] values = new long[count];
+        for (int i = 0; i < count; ) {
+            int length = Math.min(count - i, BUFFER_SIZE / 8);
+            at(position + 8L * i, 8 * length).asLongBuffer().get(values, i, length);
+            i += length;
+        }
+        return values;
+    }
+
+    /**
+     * @return a view of the buffer holding length bytes from the position, refilling the buffer from the position
+     * if they are not already in it
+     */
+    private ByteBuffer at(long position, int length) throws IOException {
+        if (position < bufferPosition || position + length > bufferPosition + buffer.limit()) {
+            fill(position, length);
+        }
+        ByteBuffer view = buffer.duplicate();
+        int offset = (int) (position - bufferPosition);
+        view.limit(offset + length);
+        view.position(offset);
+        return view;
+    }
+
+    private void fill(long position, int length) throws IOException {
+        if (length > size - position) {
+            throw new IOException("Unexpected end of token index file: " + path);
+        }
+        if (length > buffer.capacity()) {
+            buffer = ByteBuffer.allocateDirect(length);
+        }
+        buffer.clear();
+        buffer.limit((int) Math.min(buffer.capacity(), size - position));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of token index file: " + path);
+            }
+        }
+        buffer.flip();
+        bufferPosition = position;
+    }
+}
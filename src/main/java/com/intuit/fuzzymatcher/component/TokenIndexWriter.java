@@ -0,0 +1,362 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Document;
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.ElementClassification;
+import com.intuit.fuzzymatcher.domain.MatchType;
+import com.intuit.fuzzymatcher.domain.Token;
+import com.intuit.fuzzymatcher.exception.MatchException;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static com.intuit.fuzzymatcher.component.IndexFileFormat.*;
+
+/**
+ * Writes Documents to a token index file, in the layout described by IndexFileFormat.
+ * <p>
+ * Documents are pre-processed, tokenized and written one at a time, so they are not held on the heap. Only the token
+ * dictionaries, postings and a few ints per element are kept until the writer is closed, when they are written after
+ * the documents.
+ */
+class TokenIndexWriter implements Closeable {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final PositionOutputStream position;
+
+    private final DataOutputStream out;
+
+    private final int chunkShift;
+
+    private final Map<ElementClassification, Classification> classifications = new LinkedHashMap<>();
+
+    private long[] documentOffsets = new long[INITIAL_CAPACITY];
+
+    private int documentCount;
+
+    // Document ordinal and number of tokens, by element ordinal
+    private int[] elementDocuments = new int[INITIAL_CAPACITY];
+
+    private int[] elementTokenCounts = new int[INITIAL_CAPACITY];
+
+    private int elementCount;
+
+    TokenIndexWriter(Path path) throws IOException {
+        this(path, DEFAULT_CHUNK_SHIFT);
+    }
+
+    TokenIndexWriter(Path path, int chunkShift) throws IOException {
+        this.position = new PositionOutputStream(new BufferedOutputStream(Files.newOutputStream(path), 1 << 16));
+        this.out = new DataOutputStream(position);
+        this.chunkShift = chunkShift;
+
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(chunkShift);
+        out.writeInt(0);
+    }
+
+    void add(Document document) throws IOException {
+        int documentOrdinal = documentCount++;
+        if (documentOrdinal == documentOffsets.length) {
+            documentOffsets = Arrays.copyOf(documentOffsets, documentOrdinal * 2);
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        writeString(record, document.getKey());
+        record.writeDouble(document.getThreshold());
+        record.writeInt(document.getBlockingKeys().size());
+        for (String blockingKey : document.getBlockingKeys()) {
+            writeString(record, blockingKey);
+        }
+
+        Set<Element> elements = document.getPreProcessedElement();
+        record.writeInt(elements.size());
+        for (Element element : elements) {
+            int ordinal = register(documentOrdinal, element.getTokens().size());
+            Classification classification = classifications.computeIfAbsent(element.getElementClassification(),
+                    elementClassification -> new Classification(classifications.size(), element.getMatchType()));
+            classification.put(element.getTokens(), ordinal);
+
+            record.writeInt(ordinal);
+            record.writeInt(classification.id);
+            writeValue(record, element.getValue());
+            record.writeDouble(element.getWeight());
+            record.writeDouble(element.getThreshold());
+            record.writeDouble(element.getNeighborhoodRange());
+            record.writeInt(element.getMaxEditDistance());
+            writeValue(record, element.getPreProcessedValue());
+        }
+        documentOffsets[documentOrdinal] = writeRecord(bytes.toByteArray());
+    }
+
+    /**
+     * Writes the index sections and the footer, and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        long documentOffsetsPosition = writeLongs(documentOffsets, documentCount);
+        long elementDocumentsPosition = writeInts(elementDocuments, elementCount);
+        long elementTokenCountsPosition = writeInts(elementTokenCounts, elementCount);
+
+        int tokenCount = 0;
+        for (Classification classification : classifications.values()) {
+            classification.tokenBase = tokenCount;
+            tokenCount += classification.getTokenCount();
+        }
+
+        long[] tokenOffsets = new long[tokenCount];
+        int[] tokenHashes = new int[tokenCount];
+        for (Classification classification : classifications.values()) {
+            for (int tokenId = 0; tokenId < classification.getTokenCount(); tokenId++) {
+                byte[] token = encodeToken(classification.id, classification.tokenDictionary.getValue(tokenId));
+                tokenOffsets[classification.tokenBase + tokenId] = writeRecord(token);
+                tokenHashes[classification.tokenBase + tokenId] = hash(token);
+            }
+        }
+        long tokenOffsetsPosition = writeLongs(tokenOffsets, tokenCount);
+
+        long[] postingOffsets = new long[tokenCount];
+        int[] postingLengths = new int[tokenCount];
+        for (Classification classification : classifications.values()) {
+            for (int tokenId = 0; tokenId < classification.getTokenCount(); tokenId++) {
+                int size = classification.postingSizes[tokenId];
+                postingOffsets[classification.tokenBase + tokenId] = writeInts(classification.postings[tokenId], size);
+                postingLengths[classification.tokenBase + tokenId] = size;
+            }
+        }
+        long postingOffsetsPosition = writeLongs(postingOffsets, tokenCount);
+        long postingLengthsPosition = writeInts(postingLengths, tokenCount);
+
+        int hashCapacity = getHashCapacity(tokenCount);
+        int[] hashSlots = new int[hashCapacity];
+        Arrays.fill(hashSlots, -1);
+        for (int tokenId = 0; tokenId < tokenCount; tokenId++) {
+            int slot = tokenHashes[tokenId] & (hashCapacity - 1);
+            while (hashSlots[slot] != -1) {
+                slot = (slot + 1) & (hashCapacity - 1);
+            }
+            hashSlots[slot] = tokenId;
+        }
+        long hashSlotsPosition = writeInts(hashSlots, hashCapacity);
+
+        for (Classification classification : classifications.values()) {
+            NumericRangeIndex numericRangeIndex = classification.numericRangeIndex;
+            if (numericRangeIndex != null) {
+                numericRangeIndex.compact();
+                long[] keys = new long[numericRangeIndex.size()];
+                int[] ordinals = new int[numericRangeIndex.size()];
+                for (int i = 0; i < keys.length; i++) {
+                    keys[i] = numericRangeIndex.getKey(i);
+                    ordinals[i] = numericRangeIndex.getOrdinal(i);
+                }
+                classification.rangeKeysPosition = writeLongs(keys, keys.length);
+                classification.rangeOrdinalsPosition = writeInts(ordinals, ordinals.length);
+            }
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        for (Map.Entry<ElementClassification, Classification> entry : classifications.entrySet()) {
+            Classification classification = entry.getValue();
+            NumericRangeIndex numericRangeIndex = classification.numericRangeIndex;
+            writeString(record, entry.getKey().getElementType().name());
+            writeValue(record, entry.getKey().getVariance());
+            writeString(record, classification.matchType.name());
+            record.writeInt(classification.elementCount);
+            record.writeInt(classification.tokenBase);
+            record.writeInt(classification.getTokenCount());
+            record.writeByte(numericRangeIndex == null || numericRangeIndex.getKeyType() == null
+                    ? -1 : numericRangeIndex.getKeyType().ordinal());
+            record.writeBoolean(numericRangeIndex != null && numericRangeIndex.isMultiValued());
+            record.writeInt(numericRangeIndex == null ? 0 : numericRangeIndex.size());
+            record.writeLong(classification.rangeKeysPosition);
+            record.writeLong(classification.rangeOrdinalsPosition);
+        }
+        long classificationsPosition = writeRecord(bytes.toByteArray());
+
+        align();
+        out.writeInt(documentCount);
+        out.writeInt(elementCount);
+        out.writeInt(tokenCount);
+        out.writeInt(hashCapacity);
+        out.writeInt(classifications.size());
+        out.writeInt(0);
+        out.writeLong(documentOffsetsPosition);
+        out.writeLong(elementDocumentsPosition);
+        out.writeLong(elementTokenCountsPosition);
+        out.writeLong(tokenOffsetsPosition);
+        out.writeLong(postingOffsetsPosition);
+        out.writeLong(postingLengthsPosition);
+        out.writeLong(hashSlotsPosition);
+        out.writeLong(classificationsPosition);
+        out.close();
+    }
+
+    private int register(int documentOrdinal, int tokenCount) {
+        if (elementCount == elementDocuments.length) {
+            elementDocuments = Arrays.copyOf(elementDocuments, elementCount * 2);
+            elementTokenCounts = Arrays.copyOf(elementTokenCounts, elementCount * 2);
+        }
+        elementDocuments[elementCount] = documentOrdinal;
+        elementTokenCounts[elementCount] = tokenCount;
+        return elementCount++;
+    }
+
+    /**
+     * Writes a record, padded to start in the next chunk if it would cross the end of the current one
+     *
+     * @return the position of the record
+     */
+    private long writeRecord(byte[] record) throws IOException {
+        long chunkSize = 1L << chunkShift;
+        if (record.length > chunkSize) {
+            throw new MatchException("Record of " + record.length + " bytes is larger than the chunk size");
+        }
+        long start = position.getPosition();
+        if ((start >>> chunkShift) != ((start + record.length - 1) >>> chunkShift)) {
+            pad(chunkSize - (start & (chunkSize - 1)));
+        }
+        long recordPosition = position.getPosition();
+        out.write(record);
+        return recordPosition;
+    }
+
+    private long writeInts(int[] values, int length) throws IOException {
+        align();
+        long arrayPosition = position.getPosition();
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+        return arrayPosition;
+    }
+
+    private long writeLongs(long[] values, int length) throws IOException {
+        align();
+        long arrayPosition = position.getPosition();
+        for (int i = 0; i < length; i++) {
+            out.writeLong(values[i]);
+        }
+        return arrayPosition;
+    }
+
+    private void align() throws IOException {
+        pad((8 - (position.getPosition() & 7)) & 7);
+    }
+
+    private void pad(long length) throws IOException {
+        for (long i = 0; i < length; i++) {
+            out.writeByte(0);
+        }
+    }
+
+    /**
+     * The tokens of an ElementClassification
+     */
+    private static class Classification {
+
+        final int id;
+
+        final MatchType matchType;
+
+        int elementCount;
+
+        TokenDictionary tokenDictionary;
+
+        int[][] postings;
+
+        int[] postingSizes;
+
+        NumericRangeIndex numericRangeIndex;
+
+        int tokenBase;
+
+        long rangeKeysPosition = -1;
+
+        long rangeOrdinalsPosition = -1;
+
+        Classification(int id, MatchType matchType) {
+            this.id = id;
+            this.matchType = matchType;
+            if (matchType == MatchType.NEAREST_NEIGHBORS) {
+                numericRangeIndex = new NumericRangeIndex();
+            } else {
+                tokenDictionary = new TokenDictionary();
+                postings = new int[INITIAL_CAPACITY][];
+                postingSizes = new int[INITIAL_CAPACITY];
+            }
+        }
+
+        void put(List<Token> tokens, int ordinal) {
+            if (tokens.isEmpty()) {
+                return;
+            }
+            elementCount++;
+            if (numericRangeIndex != null && tokens.size() > 1) {
+                numericRangeIndex.setMultiValued();
+            }
+            for (Token token : tokens) {
+                if (numericRangeIndex != null) {
+                    numericRangeIndex.put(token.getValue(), ordinal);
+                    continue;
+                }
+                if (!isSupported(token.getValue())) {
+                    throw new MatchException("Data Type not supported");
+                }
+                int tokenId = tokenDictionary.getOrAdd(token.getValue());
+                if (tokenId == postings.length) {
+                    postings = Arrays.copyOf(postings, tokenId * 2);
+                    postingSizes = Arrays.copyOf(postingSizes, tokenId * 2);
+                }
+                int[] posting = postings[tokenId];
+                int size = postingSizes[tokenId];
+                if (posting == null) {
+                    posting = new int[1];
+                } else if (posting[size - 1] == ordinal) {
+                    continue;
+                } else if (size == posting.length) {
+                    posting = Arrays.copyOf(posting, size + (size >> 1) + 1);
+                }
+                posting[size] = ordinal;
+                postings[tokenId] = posting;
+                postingSizes[tokenId] = size + 1;
+            }
+        }
+
+        int getTokenCount() {
+            return tokenDictionary == null ? 0 : tokenDictionary.size();
+        }
+    }
+
+    /**
+     * Counts the bytes written, as DataOutputStream.size is limited to an int
+     */
+    private static class PositionOutputStream extends FilterOutputStream {
+
+        private long position;
+
+        PositionOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            position++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            position += len;
+        }
+
+        long getPosition() {
+            return position;
+        }
+    }
+}
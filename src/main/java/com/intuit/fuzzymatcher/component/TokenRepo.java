@@ -1,147 +1,892 @@
 package com.intuit.fuzzymatcher.component;
 
+import com.intuit.fuzzymatcher.domain.Document;
 import com.intuit.fuzzymatcher.domain.Element;
 import com.intuit.fuzzymatcher.domain.ElementClassification;
 import com.intuit.fuzzymatcher.domain.ElementType;
 import com.intuit.fuzzymatcher.domain.MatchType;
 import com.intuit.fuzzymatcher.domain.Token;
-import com.intuit.fuzzymatcher.exception.MatchException;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
-public class TokenRepo {
+/**
+ * Index of all the tokens, used to look up the elements sharing a token.
+ * <p>
+ * Each element put in the repo is assigned a dense int ordinal. For every ElementClassification, the distinct token
+ * values are interned into int ids, and the ordinals of the elements sharing a token are held in an int array.
+ * The arrays are kept sorted, so a candidate can be looked up in a posting with a binary search.
+ * For EQUALITY tokens shared by more elements than the bitmapCutoff, the array is replaced by a PostingBitmap.
+ * <p>
+ * The repo also keeps the document frequency of every token, the number of elements sharing it, used by the
+ * StopTokenPolicy to skip tokens too frequent to be useful for candidate generation.
+ * <p>
+ * The repo is thread safe, elements can be put and looked up by multiple threads at the same time. The EQUALITY
+ * tokens are split by hash into segments, each guarded by its own read write lock, so that threads working on
+ * different tokens do not contend. A segment is only created with its first token, so a small repo, like the index of
+ * a single block, only holds the segments of its own tokens.
+ * <p>
+ * EDIT_DISTANCE tokens are held the same way as EQUALITY tokens, and their distinct values are also added to a BkTree
+ * guarded by its own lock. A probe looks up the values within the maxEditDistance of the element in the tree, and
+ * reads the posting of each of them.
+ * <p>
+ * When MinHash is enabled for an ElementType in the MatchOptions, the band keys of its elements are held in a repo of
+ * their own, the same way as EQUALITY tokens, and forEachSimilar looks up the elements sharing a band.
+ * <p>
+ * Elements are removed with a tombstone on their ordinal, which the probes skip straight away. The ordinals are
+ * dropped from the postings and the elements released by compact, so the cost of a removal does not depend on the
+ * number of postings holding the element. Ordinals are never reused.
+ * <p>
+ * A repo can also be loaded from a token index file by TokenIndexReader, in which case the dictionaries and postings
+ * are read as is, and the elements are never tokenized again.
+ */
+public class TokenRepo implements TokenIndex {
 
-    private Map<ElementClassification, Repo> repoMap;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private static final int SEGMENT_COUNT = 32;
+
+    // Each segment holds a 1/32 of the tokens, so it starts smaller than the repo
+    private static final int SEGMENT_INITIAL_CAPACITY = 4;
+
+    private static final int[] NO_DOCUMENT_FREQUENCIES = new int[0];
+
+    private final Map<ElementClassification, Repo> repoMap;
+
+    private volatile Element[] elements;
+
+    // Number of tokens, by element ordinal
+    private volatile int[] tokenCounts;
+
+    private int elementCount;
+
+    // One bit per ordinal, set once the element is removed
+    private volatile AtomicLongArray tombstones;
+
+    private volatile int removedCount;
+
+    // The removedCount up to which the removals have been compacted
+    private int compactedCount;
+
+    private final Object compactionLock = new Object();
+
+    private final int bitmapCutoff;
+
+    private final StopTokenPolicy stopTokenPolicy;
+
+    // MinHash band keys of the elements, held as EQUALITY tokens in a repo of their own per ElementClassification
+    private final Map<ElementType, MinHash> minHashes;
+
+    private final Map<ElementClassification, Repo> bandRepoMap;
+
+    // Looked up in place of the segments not created yet, and never written
+    private final Segment emptySegment = new Segment();
 
     public TokenRepo() {
-        this.repoMap = new ConcurrentHashMap<>();
+        this(MatchOptions.defaults());
     }
 
-    public void put(Token token) {
+    public TokenRepo(MatchOptions matchOptions) {
+        this.repoMap = new ConcurrentHashMap<>();
+        this.elements = new Element[INITIAL_CAPACITY];
+        this.tokenCounts = new int[INITIAL_CAPACITY];
+        this.tombstones = new AtomicLongArray(getTombstoneWords(INITIAL_CAPACITY));
+        this.bitmapCutoff = matchOptions.getBitmapCutoff();
+        this.stopTokenPolicy = matchOptions.getStopTokenPolicy();
+        this.minHashes = matchOptions.getMinHashes();
+        this.bandRepoMap = new ConcurrentHashMap<>();
+    }
 
-        ElementClassification elementClassification = token.getElement().getElementClassification();
-        Repo repo = repoMap.get(elementClassification);
+    @Override
+    public void put(Element element) {
+        List<Token> tokens = element.getTokens();
+        int ordinal = register(element, tokens.size());
+        if (!tokens.isEmpty()) {
+            Repo repo = getOrCreateRepo(tokens.get(0));
+            repo.elementCount.incrementAndGet();
+            if (tokens.size() > 1) {
+                repo.setMultiValued();
+            }
+            tokens.forEach(token -> repo.put(token, ordinal));
+            repo.refreshMaxDocumentFrequency();
+        }
+    }
 
-        if (repo == null) {
-            repo = new Repo(token.getElement().getMatchType());
-            repoMap.put(elementClassification, repo);
+    /**
+     * Adds a single token. The tokens of an element are expected to be put one after another, by the same thread.
+     * Use put(Element) to index elements from multiple threads
+     *
+     * @param token the token to index
+     */
+    public void put(Token token) {
+        Element element = token.getElement();
+        int ordinal;
+        boolean newElement;
+        synchronized (this) {
+            newElement = elementCount == 0 || elements[elementCount - 1] != element;
+            ordinal = newElement ? register(element, element.getTokens().size()) : elementCount - 1;
+        }
+        Repo repo = getOrCreateRepo(token);
+        if (newElement) {
+            repo.elementCount.incrementAndGet();
+            repo.refreshMaxDocumentFrequency();
+            if (element.getTokens().size() > 1) {
+                repo.setMultiValued();
+            }
         }
-        repo.put(token, token.getElement());
+        repo.put(token, ordinal);
     }
 
     public Set<Element> get(Token token) {
         Repo repo = repoMap.get(token.getElement().getElementClassification());
-        if (repo != null) {
-            return repo.get(token);
+        if (repo != null && repo.contains(token)) {
+            Set<Element> matchElements = new HashSet<>();
+            forEach(token, ordinal -> matchElements.add(getElement(ordinal)));
+            return matchElements;
         }
         return null;
     }
 
+    /**
+     * Removed elements are skipped
+     */
+    @Override
+    public void forEach(Token token, IntConsumer consumer) {
+        Repo repo = repoMap.get(token.getElement().getElementClassification());
+        if (repo != null) {
+            repo.forEach(token, removedCount == 0 ? consumer : ordinal -> {
+                if (!isRemoved(ordinal)) {
+                    consumer.accept(ordinal);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void forEachCandidate(Token token, int[] candidates, int count, IntConsumer consumer) {
+        Repo repo = repoMap.get(token.getElement().getElementClassification());
+        if (repo != null && repo.matchType == MatchType.EQUALITY) {
+            repo.getSegment(token.getValue()).forEachCandidate(token.getValue(), candidates, count, consumer);
+        }
+    }
+
+    /**
+     * Removed elements are skipped
+     */
+    @Override
+    public boolean forEachSimilar(Element element, IntConsumer consumer) {
+        MinHash minHash = getMinHash(element);
+        if (minHash == null) {
+            return false;
+        }
+        Repo bandRepo = bandRepoMap.get(element.getElementClassification());
+        if (bandRepo != null) {
+            IntConsumer bandConsumer = removedCount == 0 ? consumer : ordinal -> {
+                if (!isRemoved(ordinal)) {
+                    consumer.accept(ordinal);
+                }
+            };
+            for (long bandKey : minHash.getBandKeys(element.getTokens())) {
+                bandRepo.getSegment(bandKey).forEach(bandKey, bandConsumer);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param token the token to look up
+     * @return the number of elements holding the same token value
+     */
+    @Override
+    public int getDocumentFrequency(Token token) {
+        Repo repo = repoMap.get(token.getElement().getElementClassification());
+        return repo != null ? repo.getDocumentFrequency(token) : 0;
+    }
+
+    /**
+     * Only EQUALITY tokens can be stop tokens
+     */
+    @Override
+    public boolean isStopToken(Token token) {
+        Repo repo = repoMap.get(token.getElement().getElementClassification());
+        if (repo == null || repo.matchType != MatchType.EQUALITY) {
+            return false;
+        }
+        int maxDocumentFrequency = repo.getMaxDocumentFrequency();
+        return maxDocumentFrequency != Integer.MAX_VALUE && repo.getDocumentFrequency(token) > maxDocumentFrequency;
+    }
+
+    /**
+     * @return the element, or null once a removed element is released by compact
+     */
+    @Override
+    public Element getElement(int ordinal) {
+        return elements[ordinal];
+    }
+
+    @Override
+    public int getTokenCount(int ordinal) {
+        return tokenCounts[ordinal];
+    }
+
+    /**
+     * @return the number of ordinals assigned, including the removed elements
+     */
+    @Override
+    public synchronized int size() {
+        return elementCount;
+    }
+
+    /**
+     * Marks an element as removed. Probes skip it from now on, and its ordinal is dropped from the postings by the
+     * next compact
+     *
+     * @param ordinal the ordinal of the element
+     * @return false if the element was already removed
+     */
+    synchronized boolean remove(int ordinal) {
+        long word = tombstones.get(ordinal >>> 6);
+        long bit = 1L << ordinal;
+        if ((word & bit) != 0) {
+            return false;
+        }
+        tombstones.set(ordinal >>> 6, word | bit);
+        removedCount++;
+        Element element = elements[ordinal];
+        if (element != null && tokenCounts[ordinal] > 0) {
+            Repo repo = repoMap.get(element.getElementClassification());
+            if (repo != null) {
+                repo.elementCount.decrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    boolean isRemoved(int ordinal) {
+        return (tombstones.get(ordinal >>> 6) & (1L << ordinal)) != 0;
+    }
+
+    /**
+     * @return the number of removed elements not compacted yet
+     */
+    synchronized int getPendingRemovals() {
+        return removedCount - compactedCount;
+    }
+
+    /**
+     * Drops the ordinals of the removed elements from the postings and range indexes, and releases the elements.
+     * Each segment is only locked while it is compacted, so probes and puts carry on during the compaction
+     */
+    void compact() {
+        synchronized (compactionLock) {
+            int compacting = removedCount;
+            if (compacting == compactedCount) {
+                return;
+            }
+            IntPredicate removed = this::isRemoved;
+            repoMap.values().forEach(repo -> repo.compact(removed));
+            bandRepoMap.values().forEach(repo -> repo.compact(removed));
+            synchronized (this) {
+                for (int ordinal = 0; ordinal < elementCount; ordinal++) {
+                    if (elements[ordinal] != null && isRemoved(ordinal)) {
+                        elements[ordinal] = null;
+                    }
+                }
+                compactedCount = compacting;
+            }
+        }
+    }
+
+    /**
+     * @return the distinct documents of the indexed elements, in the order they were first indexed
+     */
+    Stream<Document> getDocuments() {
+        Element[] current;
+        int count;
+        synchronized (this) {
+            current = elements;
+            count = elementCount;
+        }
+        Set<Document> documents = Collections.newSetFromMap(new IdentityHashMap<>());
+        return IntStream.range(0, count).filter(ordinal -> current[ordinal] != null && !isRemoved(ordinal))
+                .mapToObj(ordinal -> current[ordinal].getDocument()).filter(documents::add);
+    }
+
+    /**
+     * Assigns the next ordinal to an element, without adding its tokens. The MinHash bands of the element are added,
+     * if enabled for its ElementType, so an element read from a token index file is tokenized again in that case
+     *
+     * @param element    the element
+     * @param tokenCount the number of tokens of the element
+     * @return the ordinal of the element
+     */
+    int register(Element element, int tokenCount) {
+        int ordinal = assign(element, tokenCount);
+        MinHash minHash = getMinHash(element);
+        if (minHash != null && tokenCount > 0) {
+            Repo bandRepo = bandRepoMap.computeIfAbsent(element.getElementClassification(),
+                    elementClassification -> new Repo(MatchType.EQUALITY));
+            for (long bandKey : minHash.getBandKeys(element.getTokens())) {
+                bandRepo.getOrCreateSegment(bandKey).put(bandKey, ordinal);
+            }
+        }
+        return ordinal;
+    }
+
+    private synchronized int assign(Element element, int tokenCount) {
+        Element[] current = elements;
+        int[] currentTokenCounts = tokenCounts;
+        if (elementCount == current.length) {
+            current = Arrays.copyOf(current, elementCount * 2);
+            currentTokenCounts = Arrays.copyOf(currentTokenCounts, elementCount * 2);
+            AtomicLongArray currentTombstones = new AtomicLongArray(getTombstoneWords(elementCount * 2));
+            for (int i = 0; i < tombstones.length(); i++) {
+                currentTombstones.set(i, tombstones.get(i));
+            }
+            tombstones = currentTombstones;
+        }
+        current[elementCount] = element;
+        currentTokenCounts[elementCount] = tokenCount;
+        // Publishes the element to the threads reading the arrays without the lock
+        tokenCounts = currentTokenCounts;
+        elements = current;
+        return elementCount++;
+    }
+
+    /**
+     * Adds an ElementClassification read from a token index file
+     *
+     * @param elementClassification the ElementClassification
+     * @param matchType             the MatchType of its elements
+     * @param elementCount          the number of elements holding a token of the ElementClassification
+     */
+    void putClassification(ElementClassification elementClassification, MatchType matchType, int elementCount) {
+        repoMap.computeIfAbsent(elementClassification, key -> new Repo(matchType)).elementCount.addAndGet(elementCount);
+    }
+
+    /**
+     * Adds the complete posting of a new EQUALITY token read from a token index file
+     *
+     * @param elementClassification the ElementClassification of the token, added with putClassification
+     * @param value                 the token value
+     * @param posting               the ascending ordinals of the elements holding the token
+     */
+    void putPosting(ElementClassification elementClassification, Object value, int[] posting) {
+        Repo repo = repoMap.get(elementClassification);
+        if (repo.matchType == MatchType.EDIT_DISTANCE) {
+            repo.addToTree(value);
+        }
+        repo.getOrCreateSegment(value).putPosting(value, posting);
+    }
+
+    /**
+     * Sets the range index of a NEAREST_NEIGHBORS ElementClassification read from a token index file
+     *
+     * @param elementClassification the ElementClassification, added with putClassification
+     * @param numericRangeIndex     the range index
+     */
+    void putRange(ElementClassification elementClassification, NumericRangeIndex numericRangeIndex) {
+        Repo repo = repoMap.get(elementClassification);
+        repo.numericRangeLock.writeLock().lock();
+        try {
+            repo.numericRangeIndex = numericRangeIndex;
+        } finally {
+            repo.numericRangeLock.writeLock().unlock();
+        }
+    }
+
+    private static int getTombstoneWords(int capacity) {
+        return (capacity + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * @return the MinHash of the ElementType of the element, null if not enabled or the element is not EQUALITY
+     */
+    private MinHash getMinHash(Element element) {
+        return element.getMatchType() == MatchType.EQUALITY
+                ? minHashes.get(element.getElementClassification().getElementType())
+                : null;
+    }
+
+    private Repo getOrCreateRepo(Token token) {
+        return repoMap.computeIfAbsent(token.getElement().getElementClassification(),
+                elementClassification -> new Repo(token.getElement().getMatchType()));
+    }
+
     private class Repo {
 
-        MatchType matchType;
+        final MatchType matchType;
+
+        // EQUALITY and EDIT_DISTANCE tokens split by hash of the token value, each created with its first token
+        AtomicReferenceArray<Segment> segments;
+
+        // The distinct EDIT_DISTANCE token values
+        BkTree bkTree;
 
-        Map<Object, Set<Element>> tokenElementSet;
+        ReentrantReadWriteLock bkTreeLock;
 
-        TreeSet<Object> tokenBinaryTree;
+        NumericRangeIndex numericRangeIndex;
 
-        private final Double AGE_PCT_OF = 10D;
-        private final Double DATE_PCT_OF = 15777e7D; // 5 years of range
+        ReentrantReadWriteLock numericRangeLock;
+
+        // Number of distinct elements holding a token of this ElementClassification
+        final AtomicInteger elementCount = new AtomicInteger();
+
+        // The StopTokenPolicy limit, recalculated by the puts when the elementCount grows
+        volatile int maxDocumentFrequency;
+
+        volatile int maxDocumentFrequencyElementCount;
 
 
         Repo(MatchType matchType) {
             this.matchType = matchType;
             switch (matchType) {
                 case NEAREST_NEIGHBORS:
-                    tokenBinaryTree = new TreeSet<>();
+                    numericRangeIndex = new NumericRangeIndex();
+                    numericRangeLock = new ReentrantReadWriteLock();
+                    break;
+                case EDIT_DISTANCE:
+                    bkTree = new BkTree();
+                    bkTreeLock = new ReentrantReadWriteLock();
+                    // fall through
                 case EQUALITY:
-                    tokenElementSet = new ConcurrentHashMap<>();
+                    segments = new AtomicReferenceArray<>(SEGMENT_COUNT);
             }
         }
 
-        void put(Token token, Element element) {
-            switch (matchType) {
-                case NEAREST_NEIGHBORS:
-                    tokenBinaryTree.add(token.getValue());
-                case EQUALITY:
-                    Set<Element> elements = tokenElementSet.getOrDefault(token.getValue(), new HashSet<>());
-                    elements.add(element);
-                    tokenElementSet.put(token.getValue(), elements);
+        /**
+         * Marks the range index as holding multiple values for an element, before the values of the element are put,
+         * so that a probe never passes its ordinal twice
+         */
+        void setMultiValued() {
+            if (matchType != MatchType.NEAREST_NEIGHBORS) {
+                return;
             }
+            numericRangeLock.writeLock().lock();
+            try {
+                numericRangeIndex.setMultiValued();
+            } finally {
+                numericRangeLock.writeLock().unlock();
+            }
+        }
+
+        void put(Token token, int ordinal) {
+            if (matchType == MatchType.NEAREST_NEIGHBORS) {
+                numericRangeLock.writeLock().lock();
+                try {
+                    numericRangeIndex.put(token.getValue(), ordinal);
+                } finally {
+                    numericRangeLock.writeLock().unlock();
+                }
+                return;
+            }
+            Segment segment = getOrCreateSegment(token.getValue());
+            // The value is in the tree before it is in the segment, so a concurrent probe finding it can read it
+            if (matchType == MatchType.EDIT_DISTANCE && !segment.contains(token.getValue())) {
+                addToTree(token.getValue());
+            }
+            segment.put(token.getValue(), ordinal);
+        }
+
+        void addToTree(Object value) {
+            bkTreeLock.writeLock().lock();
+            try {
+                bkTree.add(value);
+            } finally {
+                bkTreeLock.writeLock().unlock();
+            }
+        }
+
+        int getDocumentFrequency(Token token) {
+            if (matchType != MatchType.EQUALITY) {
+                return 0;
+            }
+            return getSegment(token.getValue()).getDocumentFrequency(token.getValue());
         }
 
-        Set<Element> get(Token token) {
+        /**
+         * The limit of a policy based on the document frequencies is only calculated here for an index read from a
+         * file, and is otherwise kept up to date by the puts
+         */
+        int getMaxDocumentFrequency() {
+            if (!stopTokenPolicy.isDocumentFrequencyBased()) {
+                return stopTokenPolicy.getMaxDocumentFrequency(elementCount.get(), NO_DOCUMENT_FREQUENCIES);
+            }
+            if (maxDocumentFrequencyElementCount == 0) {
+                calculateMaxDocumentFrequency();
+            }
+            return maxDocumentFrequency;
+        }
+
+        /**
+         * Recalculates the limit of a policy based on the document frequencies, once the elementCount grew by 1/16
+         * since the last calculation
+         */
+        void refreshMaxDocumentFrequency() {
+            if (matchType != MatchType.EQUALITY || !stopTokenPolicy.isDocumentFrequencyBased()) {
+                return;
+            }
+            int calculatedAt = maxDocumentFrequencyElementCount;
+            if (calculatedAt == 0 || elementCount.get() > calculatedAt + (calculatedAt >> 4)) {
+                calculateMaxDocumentFrequency();
+            }
+        }
+
+        private void calculateMaxDocumentFrequency() {
+            int count = elementCount.get();
+            int tokenCount = 0;
+            for (int i = 0; i < SEGMENT_COUNT; i++) {
+                Segment segment = segments.get(i);
+                tokenCount += segment != null ? segment.getTokenCount() : 0;
+            }
+            int[] documentFrequencies = new int[tokenCount];
+            int size = 0;
+            for (int i = 0; i < SEGMENT_COUNT; i++) {
+                Segment segment = segments.get(i);
+                if (segment != null) {
+                    size = segment.copyDocumentFrequencies(documentFrequencies, size);
+                }
+            }
+            if (size < documentFrequencies.length) {
+                documentFrequencies = Arrays.copyOf(documentFrequencies, size);
+            }
+            maxDocumentFrequency = stopTokenPolicy.getMaxDocumentFrequency(count, documentFrequencies);
+            maxDocumentFrequencyElementCount = Math.max(1, count);
+        }
+
+        void compact(IntPredicate removed) {
+            if (matchType == MatchType.NEAREST_NEIGHBORS) {
+                numericRangeLock.writeLock().lock();
+                try {
+                    numericRangeIndex.remove(removed);
+                } finally {
+                    numericRangeLock.writeLock().unlock();
+                }
+                return;
+            }
+            if (segments != null) {
+                for (int i = 0; i < SEGMENT_COUNT; i++) {
+                    Segment segment = segments.get(i);
+                    if (segment != null) {
+                        segment.compact(removed);
+                    }
+                }
+            }
+        }
+
+        boolean contains(Token token) {
+            return matchType != MatchType.EQUALITY || getSegment(token.getValue()).contains(token.getValue());
+        }
+
+        void forEach(Token token, IntConsumer consumer) {
             switch (matchType) {
                 case EQUALITY:
-                    return tokenElementSet.get(token.getValue());
+                    getSegment(token.getValue()).forEach(token.getValue(), consumer);
+                    break;
                 case NEAREST_NEIGHBORS:
-                    TokenRange tokenRange;
-                    switch (token.getElement().getElementClassification().getElementType()){
-                        case AGE:
-                            tokenRange = new TokenRange(token, token.getElement().getNeighborhoodRange(), AGE_PCT_OF);
-                            break;
-                        case DATE:
-                            tokenRange = new TokenRange(token, token.getElement().getNeighborhoodRange(), DATE_PCT_OF);
-                            break;
-                        default:
-                            tokenRange = new TokenRange(token, token.getElement().getNeighborhoodRange());
-                    }
-                    return tokenBinaryTree.subSet(tokenRange.lower, true, tokenRange.higher, true)
-                            .stream()
-                            .flatMap(val -> tokenElementSet.get(val).stream()).collect(Collectors.toSet());
+                    Element element = token.getElement();
+                    forEachInRange(token.getValue(), element.getNeighborhoodRange(),
+                            NumericRangeIndex.getPctOf(element.getElementClassification().getElementType()), consumer);
+                    break;
+                case EDIT_DISTANCE:
+                    forEachWithinDistance(token.getValue(), token.getElement().getMaxEditDistance(), consumer);
+            }
+        }
 
+        private void forEachWithinDistance(Object value, int maxEditDistance, IntConsumer consumer) {
+            List<Object> values = new ArrayList<>();
+            bkTreeLock.readLock().lock();
+            try {
+                bkTree.forEach(value, maxEditDistance, values::add);
+            } finally {
+                bkTreeLock.readLock().unlock();
+            }
+            // An element holding several of the values is only passed once
+            IntConsumer target = values.size() > 1 ? new NumericRangeIndex.DistinctConsumer(consumer) : consumer;
+            for (Object found : values) {
+                getSegment(found).forEach(found, target);
             }
-            return null;
+        }
+
+        private void forEachInRange(Object value, double pct, Double pctOf, IntConsumer consumer) {
+            numericRangeLock.readLock().lock();
+            try {
+                if (!numericRangeIndex.needsMerge()) {
+                    numericRangeIndex.forEach(value, pct, pctOf, consumer);
+                    return;
+                }
+            } finally {
+                numericRangeLock.readLock().unlock();
+            }
+            // Merging the buffer changes the index, so it is done under the write lock before reading the range
+            numericRangeLock.writeLock().lock();
+            try {
+                numericRangeIndex.forEach(value, pct, pctOf, consumer);
+            } finally {
+                numericRangeLock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * @return the segment of the value, or an empty segment if no value of the segment was put yet
+         */
+        private Segment getSegment(Object value) {
+            Segment segment = segments.get(getSegmentIndex(value));
+            return segment != null ? segment : emptySegment;
+        }
+
+        private Segment getOrCreateSegment(Object value) {
+            int index = getSegmentIndex(value);
+            Segment segment = segments.get(index);
+            if (segment == null) {
+                segments.compareAndSet(index, null, new Segment());
+                segment = segments.get(index);
+            }
+            return segment;
+        }
+
+        private int getSegmentIndex(Object value) {
+            return (value.hashCode() * 0x9E3779B9) >>> (Integer.SIZE - Integer.numberOfTrailingZeros(SEGMENT_COUNT));
         }
     }
 
-    private class TokenRange {
+    /**
+     * A part of the EQUALITY tokens of an ElementClassification, with its own dictionary, postings and lock
+     */
+    private class Segment {
+
+        final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+        final TokenDictionary tokenDictionary = new TokenDictionary(SEGMENT_INITIAL_CAPACITY);
+
+        // Ordinals of the elements holding a token, indexed by token id
+        int[][] postings = new int[SEGMENT_INITIAL_CAPACITY][];
+
+        int[] postingSizes = new int[SEGMENT_INITIAL_CAPACITY];
+
+        // Compressed postings of the frequent tokens, allocated with the first one
+        PostingBitmap[] postingBitmaps;
+
+        void put(Object value, int ordinal) {
+            lock.writeLock().lock();
+            try {
+                int tokenId = tokenDictionary.getOrAdd(value);
+                if (tokenId == postings.length) {
+                    postings = Arrays.copyOf(postings, tokenId * 2);
+                    postingSizes = Arrays.copyOf(postingSizes, tokenId * 2);
+                    if (postingBitmaps != null) {
+                        postingBitmaps = Arrays.copyOf(postingBitmaps, tokenId * 2);
+                    }
+                }
+                if (postingBitmaps != null && postingBitmaps[tokenId] != null) {
+                    postingBitmaps[tokenId].add(ordinal);
+                    return;
+                }
+                int[] posting = postings[tokenId];
+                int size = postingSizes[tokenId];
+                int index = size;
+                if (posting == null) {
+                    posting = new int[1];
+                } else {
+                    // Elements put by concurrent threads can arrive out of order
+                    if (posting[size - 1] >= ordinal) {
+                        index = Arrays.binarySearch(posting, 0, size, ordinal);
+                        if (index >= 0) {
+                            return;
+                        }
+                        index = -index - 1;
+                    }
+                    if (size == posting.length) {
+                        posting = Arrays.copyOf(posting, size + (size >> 1) + 1);
+                    }
+                }
+                System.arraycopy(posting, index, posting, index + 1, size - index);
+                posting[index] = ordinal;
+                postings[tokenId] = posting;
+                postingSizes[tokenId] = size + 1;
+
+                if (size + 1 > bitmapCutoff) {
+                    compress(tokenId);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        void putPosting(Object value, int[] posting) {
+            lock.writeLock().lock();
+            try {
+                int tokenId = tokenDictionary.getOrAdd(value);
+                if (tokenId == postings.length) {
+                    postings = Arrays.copyOf(postings, tokenId * 2);
+                    postingSizes = Arrays.copyOf(postingSizes, tokenId * 2);
+                    if (postingBitmaps != null) {
+                        postingBitmaps = Arrays.copyOf(postingBitmaps, tokenId * 2);
+                    }
+                }
+                postings[tokenId] = posting;
+                postingSizes[tokenId] = posting.length;
+                if (posting.length > bitmapCutoff) {
+                    compress(tokenId);
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
 
-        private final Object lower;
-        private final Object higher;
+        void compact(IntPredicate removed) {
+            lock.writeLock().lock();
+            try {
+                for (int tokenId = 0; tokenId < tokenDictionary.size(); tokenId++) {
+                    if (postingBitmaps != null && postingBitmaps[tokenId] != null) {
+                        PostingBitmap postingBitmap = postingBitmaps[tokenId];
+                        int[] posting = new int[postingBitmap.size()];
+                        int[] size = {0};
+                        postingBitmap.forEach(ordinal -> {
+                            if (!removed.test(ordinal)) {
+                                posting[size[0]++] = ordinal;
+                            }
+                        });
+                        if (size[0] < posting.length) {
+                            postingBitmaps[tokenId] = null;
+                            postings[tokenId] = posting;
+                            postingSizes[tokenId] = size[0];
+                            if (size[0] > bitmapCutoff) {
+                                compress(tokenId);
+                            } else {
+                                postings[tokenId] = Arrays.copyOf(posting, size[0]);
+                            }
+                        }
+                        continue;
+                    }
+                    int[] posting = postings[tokenId];
+                    int size = postingSizes[tokenId];
+                    int kept = 0;
+                    for (int i = 0; i < size; i++) {
+                        if (!removed.test(posting[i])) {
+                            posting[kept++] = posting[i];
+                        }
+                    }
+                    if (kept < size) {
+                        postings[tokenId] = kept == 0 ? null : Arrays.copyOf(posting, kept);
+                        postingSizes[tokenId] = kept;
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
 
-        TokenRange(Token token, double pct, Double pctOf) {
-            Object value = token.getValue();
-            if (value instanceof Double) {
-                this.lower = getLower((Double) value, pct, pctOf).doubleValue();
-                this.higher = getHigher((Double) value, pct, pctOf).doubleValue();
-            } else if (value instanceof Integer) {
-                this.lower = getLower((Integer) value, pct, pctOf).intValue();
-                this.higher = getHigher((Integer) value, pct, pctOf).intValue();
-            } else if (value instanceof Long) {
-                this.lower = getLower((Long) value, pct, pctOf).longValue();
-                this.higher = getHigher((Long) value, pct, pctOf).longValue();
-            } else if (value instanceof Float) {
-                this.lower = getLower((Float) value, pct, pctOf).floatValue();
-                this.higher = getHigher((Float) value, pct, pctOf).floatValue();
-            } else if (value instanceof Date) {
-                this.lower = new Date(getLower(((Date) value).getTime(), pct, pctOf).longValue());
-                this.higher = new Date(getHigher(((Date) value).getTime(), pct, pctOf).longValue());
-            } else {
-                throw new MatchException("Data Type not supported");
+        boolean contains(Object value) {
+            lock.readLock().lock();
+            try {
+                return tokenDictionary.getId(value) >= 0;
+            } finally {
+                lock.readLock().unlock();
             }
         }
 
-        TokenRange(Token token, double pct) {
-            this(token, pct, null);
+        void forEach(Object value, IntConsumer consumer) {
+            lock.readLock().lock();
+            try {
+                int tokenId = tokenDictionary.getId(value);
+                if (tokenId < 0) {
+                    return;
+                }
+                if (postingBitmaps != null && postingBitmaps[tokenId] != null) {
+                    postingBitmaps[tokenId].forEach(consumer);
+                    return;
+                }
+                int[] posting = postings[tokenId];
+                for (int i = 0; i < postingSizes[tokenId]; i++) {
+                    consumer.accept(posting[i]);
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
         }
 
-        private Number getLower(Number number, double pct, Double pctOf) {
-            Double dnum = number.doubleValue();
-            Double dPctOf = pctOf != null ? pctOf : dnum;
-            Double pctVal = Math.abs(dPctOf * (1.0 - pct));
-            return dnum - pctVal;
+        void forEachCandidate(Object value, int[] candidates, int count, IntConsumer consumer) {
+            lock.readLock().lock();
+            try {
+                int tokenId = tokenDictionary.getId(value);
+                if (tokenId < 0) {
+                    return;
+                }
+                PostingBitmap postingBitmap = postingBitmaps != null ? postingBitmaps[tokenId] : null;
+                for (int i = 0; i < count; i++) {
+                    int candidate = candidates[i];
+                    if (postingBitmap != null
+                            ? postingBitmap.contains(candidate)
+                            : Arrays.binarySearch(postings[tokenId], 0, postingSizes[tokenId], candidate) >= 0) {
+                        consumer.accept(candidate);
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
         }
 
-        private Number getHigher(Number number, double pct, Double pctOf) {
-            Double dnum = number.doubleValue();
-            Double dPctOf = pctOf != null ? pctOf : dnum;
-            Double pctVal = Math.abs(dPctOf * (1.0 - pct));
-            return dnum + pctVal;
+        int getDocumentFrequency(Object value) {
+            lock.readLock().lock();
+            try {
+                int tokenId = tokenDictionary.getId(value);
+                return tokenId < 0 ? 0 : getDocumentFrequency(tokenId);
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int getTokenCount() {
+            lock.readLock().lock();
+            try {
+                return tokenDictionary.size();
+            } finally {
+                lock.readLock().unlock();
+            }
         }
 
+        /**
+         * Copies the document frequency of the tokens, up to the end of the array, as tokens can be added since the
+         * array was sized
+         *
+         * @return the offset after the last document frequency copied
+         */
+        int copyDocumentFrequencies(int[] documentFrequencies, int offset) {
+            lock.readLock().lock();
+            try {
+                int count = Math.min(tokenDictionary.size(), documentFrequencies.length - offset);
+                for (int tokenId = 0; tokenId < count; tokenId++) {
+                    documentFrequencies[offset + tokenId] = getDocumentFrequency(tokenId);
+                }
+                return offset + count;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private int getDocumentFrequency(int tokenId) {
+            return postingBitmaps != null && postingBitmaps[tokenId] != null
+                    ? postingBitmaps[tokenId].size()
+                    : postingSizes[tokenId];
+        }
+
+        private void compress(int tokenId) {
+            if (postingBitmaps == null) {
+                postingBitmaps = new PostingBitmap[postings.length];
+            }
+            postingBitmaps[tokenId] = new PostingBitmap(postings[tokenId], postingSizes[tokenId]);
+            postings[tokenId] = null;
+            postingSizes[tokenId] = 0;
+        }
     }
 
 }
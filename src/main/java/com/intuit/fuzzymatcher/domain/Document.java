@@ -1,13 +1,17 @@
 package com.intuit.fuzzymatcher.domain;
 
 import com.intuit.fuzzymatcher.function.ScoringFunction;
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiFunction;
 import java.util.function.Function;
@@ -23,23 +27,43 @@ import java.util.stream.Stream;
  * <ul>
  * <li>elements - A set of Element object to match against</li>
  * <li>threshold - Value above which documents are considered a match, default 0.5</li>
+ * <li>blockingKeys - Documents are only matched with documents sharing one of their blocking keys, like a country or
+ * a tenant. Documents without a blocking key are only matched with each other, default none</li>
  * </ul>
  */
 public class Document implements Matchable {
-    private Document(String key, Set<Element> elements, double threshold) {
+    private Document(String key, Set<Element> elements, double threshold, SortedSet<String> blockingKeys) {
         this.key = key;
         this.elements = elements;
         this.threshold = threshold;
+        this.blockingKeys = blockingKeys;
     }
 
     private String key;
     private Set<Element> elements;
     private Set<Element> preProcessedElement;
+    private Map<ElementClassification, Integer> classificationCounts;
+    private volatile long classificationMask = UNKNOWN_MASK;
+    // The smallest ElementClassification id of the document, the id of the lowest bit of the mask
+    private int classificationBase;
     private double threshold;
+    private SortedSet<String> blockingKeys;
     private Boolean source;
 
     private static final BiFunction<Match, List<Score>, Score> DEFAULT_DOCUMENT_SCORING = ScoringFunction.getExponentialWeightedAverageScore();
 
+    // The span of ElementClassification ids held in a classification mask, the bits above are reserved for the markers
+    private static final int MASK_IDS = 62;
+
+    // The classification mask is not calculated yet
+    private static final long UNKNOWN_MASK = 0;
+
+    // Set in every classification mask, so that a mask is never equal to UNKNOWN_MASK
+    private static final long COMPUTED_MASK = 1L << 63;
+
+    // The document holds an ElementClassification more than once, or ids spanning more than the mask
+    private static final long NO_MASK = -1;
+
     public String getKey() {
         return key;
     }
@@ -59,6 +83,13 @@ public class Document implements Matchable {
         return threshold;
     }
 
+    /**
+     * @return the sorted blocking keys, empty if the document can be matched with any document without a blocking key
+     */
+    public SortedSet<String> getBlockingKeys() {
+        return blockingKeys;
+    }
+
     public Stream<Element> getDistinctElements() {
         return this.elements.stream()
                 .filter(distinctByKey(Element::getPreprocessedValueWithType));
@@ -79,33 +110,132 @@ public class Document implements Matchable {
         return t -> seen.add(keyExtractor.apply(t));
     }
 
+    /**
+     * The size of the union of the ElementClassifications of both documents, counting each ElementClassification as
+     * many times as it is held by the document holding it the most
+     */
     @Override
     public long getChildCount(Matchable other) {
         if (other instanceof Document) {
-            Document o = (Document) other;
-            List<ElementClassification> childrenType = this.getPreProcessedElement().stream()
-                    .map(Element::getElementClassification).collect(Collectors.toList());
-            List<ElementClassification> oChildrenType = o.getPreProcessedElement().stream()
-                    .map(Element::getElementClassification).collect(Collectors.toList());
-            return CollectionUtils.union(childrenType, oChildrenType).size();
+            long mask = getClassificationMask();
+            long oMask = ((Document) other).getClassificationMask();
+            if (mask != NO_MASK && oMask != NO_MASK) {
+                int shift = ((Document) other).classificationBase - classificationBase;
+                mask = alignMask(mask, -shift);
+                oMask = alignMask(oMask, shift);
+                if (mask != NO_MASK && oMask != NO_MASK) {
+                    return Long.bitCount(mask | oMask);
+                }
+            }
+            Map<ElementClassification, Integer> counts = getClassificationCounts();
+            Map<ElementClassification, Integer> oCounts = ((Document) other).getClassificationCounts();
+            long count = 0;
+            for (Map.Entry<ElementClassification, Integer> entry : counts.entrySet()) {
+                count += Math.max(entry.getValue(), oCounts.getOrDefault(entry.getKey(), 0));
+            }
+            for (Map.Entry<ElementClassification, Integer> entry : oCounts.entrySet()) {
+                if (!counts.containsKey(entry.getKey())) {
+                    count += entry.getValue();
+                }
+            }
+            return count;
         }
         return 0;
 
     }
 
+    /**
+     * The size of the disjunction of the ElementClassifications of both documents, counting each ElementClassification
+     * by the difference of the times both documents hold it
+     */
     @Override
     public long getUnmatchedChildCount(Matchable other) {
         if (other instanceof Document) {
-            Document o = (Document) other;
-            List<ElementClassification> childrenType = this.getPreProcessedElement().stream()
-                    .map(Element::getElementClassification).collect(Collectors.toList());
-            List<ElementClassification> oChildrenType = o.getPreProcessedElement().stream()
-                    .map(Element::getElementClassification).collect(Collectors.toList());
-            return CollectionUtils.disjunction(childrenType, oChildrenType).size();
+            long mask = getClassificationMask();
+            long oMask = ((Document) other).getClassificationMask();
+            if (mask != NO_MASK && oMask != NO_MASK) {
+                int shift = ((Document) other).classificationBase - classificationBase;
+                mask = alignMask(mask, -shift);
+                oMask = alignMask(oMask, shift);
+                if (mask != NO_MASK && oMask != NO_MASK) {
+                    return Long.bitCount(mask ^ oMask);
+                }
+            }
+            Map<ElementClassification, Integer> counts = getClassificationCounts();
+            Map<ElementClassification, Integer> oCounts = ((Document) other).getClassificationCounts();
+            long count = 0;
+            for (Map.Entry<ElementClassification, Integer> entry : counts.entrySet()) {
+                count += Math.abs(entry.getValue() - oCounts.getOrDefault(entry.getKey(), 0));
+            }
+            for (Map.Entry<ElementClassification, Integer> entry : oCounts.entrySet()) {
+                if (!counts.containsKey(entry.getKey())) {
+                    count += entry.getValue();
+                }
+            }
+            return count;
         }
         return 0;
     }
 
+    /**
+     * The classification signature of the document, a bit set by the id of each ElementClassification of its
+     * pre-processed elements, relative to the smallest of them, calculated once. When both documents hold each of their
+     * ElementClassifications once, and their masks fit together once aligned on the same base, the union is the count
+     * of the bits set in either mask, and the disjunction the count of the bits set in only one of them. Otherwise,
+     * NO_MASK, and the counts are calculated from the classification counts.
+     * <p>
+     * The ids are interned for the whole JVM, so relative to the base, the mask holds any ElementClassifications first
+     * used close enough to each other, like the ones of the same kind of documents, whatever the number of ids.
+     */
+    private long getClassificationMask() {
+        long mask = this.classificationMask;
+        if (mask == UNKNOWN_MASK) {
+            int base = Integer.MAX_VALUE;
+            for (Element element : getPreProcessedElement()) {
+                base = Math.min(base, element.getElementClassification().getId());
+            }
+            mask = COMPUTED_MASK;
+            for (Element element : getPreProcessedElement()) {
+                int bit = element.getElementClassification().getId() - base;
+                if (bit >= MASK_IDS || (mask & (1L << bit)) != 0) {
+                    mask = NO_MASK;
+                    break;
+                }
+                mask |= 1L << bit;
+            }
+            // Written before the mask, so it is visible to the threads reading the mask
+            this.classificationBase = base == Integer.MAX_VALUE ? 0 : base;
+            this.classificationMask = mask;
+        }
+        return mask;
+    }
+
+    /**
+     * @param mask  a classification mask
+     * @param shift the difference of the bases of the documents, the mask is only shifted when it is positive
+     * @return the bits of the mask aligned on the smaller base, or NO_MASK if they do not fit in the mask
+     */
+    private static long alignMask(long mask, int shift) {
+        mask &= ~COMPUTED_MASK;
+        if (shift <= 0 || mask == 0) {
+            return mask;
+        }
+        return shift < MASK_IDS && (mask >>> (MASK_IDS - shift)) == 0 ? mask << shift : NO_MASK;
+    }
+
+    /**
+     * @return the number of pre-processed elements by ElementClassification, calculated once as every candidate
+     * document is scored against it
+     */
+    private Map<ElementClassification, Integer> getClassificationCounts() {
+        if (this.classificationCounts == null) {
+            Map<ElementClassification, Integer> counts = new HashMap<>();
+            getPreProcessedElement().forEach(element -> counts.merge(element.getElementClassification(), 1, Integer::sum));
+            this.classificationCounts = counts;
+        }
+        return classificationCounts;
+    }
+
     @Override
     public BiFunction<Match, List<Score>, Score> getScoringFunction() {
         return DEFAULT_DOCUMENT_SCORING;
@@ -128,6 +258,7 @@ public class Document implements Matchable {
         private String key;
         private Set<Element> elements;
         private double threshold = 0.5;
+        private SortedSet<String> blockingKeys;
 
         public Builder(String key) {
             this.key = key;
@@ -146,8 +277,17 @@ public class Document implements Matchable {
             return this;
         }
 
+        public Builder addBlockingKey(String blockingKey) {
+            if (this.blockingKeys == null) {
+                this.blockingKeys = new TreeSet<>();
+            }
+            this.blockingKeys.add(blockingKey);
+            return this;
+        }
+
         public Document createDocument() {
-            Document doc = new Document(key, elements, threshold);
+            Document doc = new Document(key, elements, threshold, blockingKeys == null
+                    ? Collections.emptySortedSet() : Collections.unmodifiableSortedSet(new TreeSet<>(blockingKeys)));
             doc.elements.stream().forEach(element -> element.setDocument(doc));
             return doc;
         }
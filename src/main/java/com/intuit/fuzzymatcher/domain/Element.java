@@ -11,6 +11,7 @@ import java.util.stream.Stream;
 
 import static com.intuit.fuzzymatcher.function.PreProcessFunction.toLowerCase;
 import static com.intuit.fuzzymatcher.function.PreProcessFunction.trim;
+import static com.intuit.fuzzymatcher.function.TokenizerFunction.valueTokenizer;
 
 /**
  * <p>
@@ -22,8 +23,10 @@ import static com.intuit.fuzzymatcher.function.PreProcessFunction.trim;
  * <li>weight - Used in scoring function to increase the Document score for an Element. Default is 1.0 for all elements</li>
  * <li>threshold - Value above which elements are considered a match, default 0.3</li>
  * <li>neighborhoodRange - Relevant for NEAREST_NEIGHBORS MatchType. Defines how close should the value be, to be considered a match (default 0.9) </li>
+ * <li>maxEditDistance - Relevant for EDIT_DISTANCE MatchType. The max number of inserted, deleted or substituted characters between two tokens, to be considered a match (default 1) </li>
  * <li>preProcessFunction - Function to pre-process the value. If this is not set, the function defined in ElementType is used </li>
- * <li>tokenizerFunction - Function to break values into tokens. If this is not set, the function defined in ElementType is used </li>
+ * <li>tokenizerFunction - Function to break values into tokens. If this is not set, the function defined in ElementType is used,
+ * or the whole value as a single token for EDIT_DISTANCE MatchType </li>
  * <li>matchType - MatchType used. If this is not set, the type defined in ElementType is used </li>
  * </ul>
  */
@@ -33,6 +36,7 @@ public class Element<T> implements Matchable {
     private double weight;
     private double threshold;
     private double neighborhoodRange;
+    private int maxEditDistance;
     private ElementClassification elementClassification;
     private Document document;
     private Function<T, T> preProcessFunction;
@@ -45,14 +49,28 @@ public class Element<T> implements Matchable {
     public Element(ElementType type, String variance, T value, double weight, double threshold,
                    double neighborhoodRange, Function<T, T> preProcessFunction,
                    Function<Element<T>, Stream<Token>> tokenizerFunction, MatchType matchType) {
+        this(type, variance, value, weight, threshold, neighborhoodRange, 1, preProcessFunction, tokenizerFunction,
+                matchType);
+    }
+
+    public Element(ElementType type, String variance, T value, double weight, double threshold,
+                   double neighborhoodRange, int maxEditDistance, Function<T, T> preProcessFunction,
+                   Function<Element<T>, Stream<Token>> tokenizerFunction, MatchType matchType) {
         this.weight = weight;
         this.elementClassification = new ElementClassification(type, variance);
         this.value = value;
         this.threshold = threshold;
         this.preProcessFunction = preProcessFunction == null ? type.getPreProcessFunction() : preProcessFunction;
-        this.tokenizerFunction = tokenizerFunction == null ? type.getTokenizerFunction() : tokenizerFunction;
         this.matchType = matchType == null ? type.getMatchType() : matchType;
+        if (tokenizerFunction != null) {
+            this.tokenizerFunction = tokenizerFunction;
+        } else if (this.matchType == MatchType.EDIT_DISTANCE) {
+            this.tokenizerFunction = (Function) valueTokenizer();
+        } else {
+            this.tokenizerFunction = type.getTokenizerFunction();
+        }
         this.neighborhoodRange = neighborhoodRange;
+        this.maxEditDistance = maxEditDistance;
     }
 
     public ElementClassification getElementClassification() {
@@ -76,6 +94,10 @@ public class Element<T> implements Matchable {
         return neighborhoodRange;
     }
 
+    public int getMaxEditDistance() {
+        return maxEditDistance;
+    }
+
     public Document getDocument() {
         return document;
     }
@@ -117,6 +139,14 @@ public class Element<T> implements Matchable {
         return this.matchType;
     }
 
+    /**
+     * Sets the tokens of the element, instead of applying the tokenizer function. The tokens are expected to hold
+     * this element
+     */
+    public void setTokens(List<Token> tokens) {
+        this.tokens = tokens;
+    }
+
     public List<Token> getTokens() {
         if (this.tokens == null) {
             this.tokens = getTokenizerFunction().apply(this).distinct().collect(Collectors.toList());
@@ -128,6 +158,13 @@ public class Element<T> implements Matchable {
         return ((double)matchingCount / (double) getChildCount(other));
     }
 
+    /**
+     * Same as getScore, for a matching Element known only by its number of tokens
+     */
+    public double getScore(Integer matchingCount, int otherTokenCount) {
+        return ((double) matchingCount / (double) Math.max(this.getTokens().size(), otherTokenCount));
+    }
+
 
     /**
      * This gets the Max number of tokens present between matching Elements.
@@ -169,6 +206,7 @@ public class Element<T> implements Matchable {
         private double weight = 1.0;
         private double threshold = 0.3;
         private double neighborhoodRange = 0.9;
+        private int maxEditDistance = 1;
         private Function<T, T> preProcessFunction;
         private MatchType matchType;
 
@@ -204,6 +242,11 @@ public class Element<T> implements Matchable {
             return this;
         }
 
+        public Builder setMaxEditDistance(int maxEditDistance) {
+            this.maxEditDistance = maxEditDistance;
+            return this;
+        }
+
         public Builder setPreProcessingFunction(Function<T, T> preProcessingFunction) {
             this.preProcessFunction = preProcessingFunction;
             return this;
@@ -222,7 +265,7 @@ public class Element<T> implements Matchable {
 
 
         public Element createElement() {
-            return new Element<T>(type, variance, value, weight, threshold, neighborhoodRange, preProcessFunction, tokenizerFunction, matchType);
+            return new Element<T>(type, variance, value, weight, threshold, neighborhoodRange, maxEditDistance, preProcessFunction, tokenizerFunction, matchType);
         }
     }
 
@@ -1,7 +1,10 @@
 package com.intuit.fuzzymatcher.domain;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Stream;
 
@@ -14,10 +17,17 @@ import java.util.stream.Stream;
  */
 public class ElementClassification {
 
+    // The interned id of each distinct ElementClassification, in the order they are first used
+    private static final Map<ElementClassification, Integer> IDS = new ConcurrentHashMap<>();
+
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
     private ElementType elementType;
 
     private String variance;
 
+    private int id = -1;
+
     public ElementClassification(ElementType elementType, String variance) {
         this.elementType = elementType;
         this.variance = variance;
@@ -31,6 +41,18 @@ public class ElementClassification {
         return variance;
     }
 
+    /**
+     * @return the id interned for the ElementClassification, the same for all the equal ElementClassifications. The
+     * ids are small, consecutive ints in the order the ElementClassifications are first used. They are never freed, so
+     * a Document masks its ElementClassifications relative to the smallest of its ids
+     */
+    int getId() {
+        if (id < 0) {
+            id = IDS.computeIfAbsent(this, key -> NEXT_ID.getAndIncrement());
+        }
+        return id;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -42,6 +64,7 @@ public class ElementClassification {
 
     @Override
     public int hashCode() {
-        return Objects.hash(elementType, variance);
+        // Same value as Objects.hash(elementType, variance), without allocating the varargs array on every lookup
+        return 31 * (31 + Objects.hashCode(elementType)) + Objects.hashCode(variance);
     }
 }
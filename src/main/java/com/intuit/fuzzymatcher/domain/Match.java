@@ -1,7 +1,6 @@
 package com.intuit.fuzzymatcher.domain;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -57,18 +56,31 @@ public class Match<T extends Matchable> {
         }
     }
 
+    /**
+     * Keeps the best score of each child, the first one if several are equal. This runs for every candidate Document,
+     * so it is a plain loop rather than a grouping stream
+     */
     private List<Score> getMaxDistinctScores(List<Score> scoreList) {
-        Map<Matchable, Optional<Score>> map = scoreList.stream()
-                .collect(Collectors.groupingBy(s -> s.getMatch().getData(),
-                        Collectors.maxBy(Comparator.comparingDouble(Score::getResult))));
-
-        return map.entrySet().stream().map(entry -> entry.getValue().get()).collect(Collectors.toList());
+        Map<Matchable, Score> map = new HashMap<>();
+        for (Score score : scoreList) {
+            map.merge(score.getMatch().getData(), score,
+                    (max, other) -> other.getResult() > max.getResult() ? other : max);
+        }
+        return new ArrayList<>(map.values());
     }
 
     public double getWeight() {
         return getData().getWeight();
     }
 
+    /**
+     * @return the same match from the side of the matched object, with the same score. It is built on each call, so a
+     * symmetric match can be held once and read in both directions
+     */
+    public Match<T> reversed() {
+        return new Match<>(this.matchedWith, this.data, getResult());
+    }
+
     @Override
     public String toString() {
         return "Match{" +
@@ -2,5 +2,6 @@ package com.intuit.fuzzymatcher.domain;
 
 public enum MatchType {
     EQUALITY,
-    NEAREST_NEIGHBORS
+    NEAREST_NEIGHBORS,
+    EDIT_DISTANCE
 }
@@ -0,0 +1,70 @@
+package com.intuit.fuzzymatcher.component;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+public class BkTreeTest {
+
+    @Test
+    public void itShouldCalculateLevenshteinDistance() {
+        Assert.assertEquals(0, BkTree.getDistance("kitten", "kitten"));
+        Assert.assertEquals(3, BkTree.getDistance("kitten", "sitting"));
+        Assert.assertEquals(3, BkTree.getDistance("sitting", "kitten"));
+        Assert.assertEquals(4, BkTree.getDistance("", "abcd"));
+        Assert.assertEquals(1, BkTree.getDistance("4532015112830366", "4532015112830367"));
+    }
+
+    @Test
+    public void itShouldFindValuesWithinDistance() {
+        BkTree bkTree = new BkTree();
+        for (String value : new String[]{"book", "books", "cake", "boo", "cape", "cart", "boon", "cook"}) {
+            Assert.assertTrue(bkTree.add(value));
+        }
+        Assert.assertFalse(bkTree.add("book"));
+        Assert.assertEquals(8, bkTree.size());
+
+        Set<Object> found = new TreeSet<>();
+        bkTree.forEach("bo0k", 1, found::add);
+        Assert.assertEquals(new TreeSet<>(List.of("book")), found);
+
+        found.clear();
+        bkTree.forEach("book", 1, found::add);
+        Assert.assertEquals(new TreeSet<>(List.of("boo", "book", "books", "boon", "cook")), found);
+    }
+
+    @Test
+    public void itShouldFindSameValuesAsFullScan() {
+        Random random = new Random(11);
+        BkTree bkTree = new BkTree();
+        List<String> values = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder value = new StringBuilder();
+            for (int j = 0; j < 4 + random.nextInt(4); j++) {
+                value.append((char) ('a' + random.nextInt(4)));
+            }
+            if (bkTree.add(value.toString())) {
+                values.add(value.toString());
+            }
+        }
+        for (int maxDistance = 0; maxDistance <= 2; maxDistance++) {
+            for (int i = 0; i < 20; i++) {
+                String query = values.get(random.nextInt(values.size()));
+                Set<Object> expected = new TreeSet<>();
+                for (String value : values) {
+                    if (BkTree.getDistance(value, query) <= maxDistance) {
+                        expected.add(value);
+                    }
+                }
+                Set<Object> found = new TreeSet<>();
+                bkTree.forEach(query, maxDistance, found::add);
+                Assert.assertEquals(expected, found);
+            }
+        }
+    }
+}
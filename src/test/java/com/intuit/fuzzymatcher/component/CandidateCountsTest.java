@@ -0,0 +1,43 @@
+package com.intuit.fuzzymatcher.component;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CandidateCountsTest {
+
+    @Test
+    public void itShouldCountByOrdinal() {
+        CandidateCounts candidateCounts = new CandidateCounts();
+        candidateCounts.increment(3);
+        candidateCounts.increment(1000);
+        candidateCounts.increment(3);
+        Assert.assertFalse(candidateCounts.incrementIfPresent(7));
+        Assert.assertTrue(candidateCounts.incrementIfPresent(1000));
+        Assert.assertFalse(candidateCounts.incrementIfPresent(5000));
+
+        Assert.assertEquals(2, candidateCounts.size());
+        Assert.assertEquals(2, candidateCounts.get(3));
+        Assert.assertEquals(2, candidateCounts.get(1000));
+        Assert.assertEquals(0, candidateCounts.get(7));
+        Assert.assertArrayEquals(new int[]{3, 1000}, candidateCounts.toArray());
+    }
+
+    @Test
+    public void itShouldResetTouchedOrdinals() {
+        CandidateCounts candidateCounts = new CandidateCounts();
+        for (int ordinal = 0; ordinal < 200; ordinal++) {
+            candidateCounts.increment(ordinal);
+        }
+        candidateCounts.removeIf(ordinal -> ordinal % 2 == 0);
+        Assert.assertEquals(100, candidateCounts.size());
+        Assert.assertEquals(0, candidateCounts.get(10));
+        Assert.assertEquals(1, candidateCounts.get(11));
+        Assert.assertEquals(11, candidateCounts.getOrdinal(5));
+
+        candidateCounts.clear();
+        Assert.assertEquals(0, candidateCounts.size());
+        Assert.assertEquals(0, candidateCounts.get(11));
+        candidateCounts.increment(11);
+        Assert.assertEquals(1, candidateCounts.get(11));
+    }
+}
@@ -0,0 +1,58 @@
+package com.intuit.fuzzymatcher.component;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.IntStream;
+
+public class DisjointSetTest {
+
+    @Test
+    public void itShouldGroupLinkedOrdinals() {
+        DisjointSet disjointSet = new DisjointSet(10);
+        disjointSet.union(4, 7);
+        disjointSet.union(7, 9);
+        disjointSet.union(2, 3);
+
+        Assert.assertEquals(4, disjointSet.find(9));
+        Assert.assertEquals(disjointSet.find(4), disjointSet.find(7));
+        Assert.assertEquals(2, disjointSet.find(3));
+        Assert.assertNotEquals(disjointSet.find(3), disjointSet.find(4));
+        Assert.assertEquals(5, disjointSet.find(5));
+        Assert.assertEquals(10, disjointSet.size());
+    }
+
+    @Test
+    public void itShouldGroupLongChainsWithoutRecursion() {
+        int size = 1_000_000;
+        DisjointSet disjointSet = new DisjointSet(size);
+        for (int ordinal = size - 1; ordinal > 0; ordinal--) {
+            disjointSet.union(ordinal, ordinal - 1);
+        }
+        Assert.assertEquals(0, disjointSet.find(size - 1));
+        Assert.assertEquals(0, disjointSet.find(size / 2));
+    }
+
+    @Test
+    public void itShouldUnionFromMultipleThreads() {
+        int size = 100_000;
+        DisjointSet disjointSet = new DisjointSet(size);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            // Links the even and the odd ordinals in two chains, each thread doing a quarter of the links
+            CompletableFuture.allOf(IntStream.range(0, 4).mapToObj(thread -> CompletableFuture.runAsync(() -> {
+                for (int ordinal = thread + 2; ordinal < size; ordinal += 4) {
+                    disjointSet.union(ordinal, ordinal - 2);
+                }
+            }, executor)).toArray(CompletableFuture[]::new)).join();
+        } finally {
+            executor.shutdown();
+        }
+        for (int ordinal = 0; ordinal < size; ordinal++) {
+            Assert.assertEquals(ordinal % 2, disjointSet.find(ordinal));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Document;
+import com.intuit.fuzzymatcher.domain.Element;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.intuit.fuzzymatcher.domain.ElementType.*;
+
+public class DocumentSorterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void itShouldSortSameWithSpilledRuns() throws IOException {
+        List<Function<Document, String>> sortKeys = Arrays.asList(
+                SortedNeighborhood.tokens(NAME, 8), SortedNeighborhood.preProcessedValue(PHONE, 3));
+        List<Document> documents = getDocuments();
+        Path directory = temporaryFolder.newFolder().toPath();
+
+        try (DocumentSorter inMemory = new DocumentSorter(sortKeys, documents.size(), directory);
+             DocumentSorter spilled = new DocumentSorter(sortKeys, 7, directory)) {
+            inMemory.sort(documents.stream());
+            spilled.sort(getDocuments().stream());
+            Assert.assertEquals(0, Files.list(directory).count() % 2);
+            Assert.assertTrue(Files.list(directory).count() > 0);
+
+            for (int keyIndex = 0; keyIndex < sortKeys.size(); keyIndex++) {
+                List<String> expected = getKeys(inMemory.iterator(keyIndex));
+                Assert.assertEquals(documents.size(), expected.size());
+                Assert.assertEquals(expected, getKeys(spilled.iterator(keyIndex)));
+            }
+        }
+        Assert.assertEquals(0, Files.list(directory).count());
+    }
+
+    @Test
+    public void itShouldReadBackSpilledDocument() throws IOException {
+        Document document = new Document.Builder("1").setThreshold(0.6).addBlockingKey("US")
+                .addElement(new Element.Builder().setType(NAME).setValue("James Parker").createElement())
+                .addElement(new Element.Builder<Integer>().setType(NUMBER).setValue(42).setNeighborhoodRange(0.8).createElement())
+                .addElement(new Element.Builder().setType(EMAIL).setVariance("work").setValue("jparker@gmail.com").setWeight(2).createElement())
+                .createDocument();
+        document.setSource(true);
+
+        try (DocumentSorter documentSorter = new DocumentSorter(Collections.singletonList(Document::getKey), 1,
+                temporaryFolder.newFolder().toPath())) {
+            documentSorter.sort(Stream.of(document, new Document.Builder("2")
+                    .addElement(new Element.Builder().setType(NAME).setValue("Amy Doe").createElement()).createDocument()));
+            Document read = documentSorter.iterator(0).next();
+
+            Assert.assertEquals("1", read.getKey());
+            Assert.assertEquals(0.6, read.getThreshold(), 0.0);
+            Assert.assertTrue(read.isSource());
+            Assert.assertEquals(document.getBlockingKeys(), read.getBlockingKeys());
+            Assert.assertEquals(getElements(document), getElements(read));
+        }
+    }
+
+    private Set<String> getElements(Document document) {
+        return document.getPreProcessedElement().stream()
+                .map(element -> element.getElementClassification().getElementType() + ":"
+                        + element.getElementClassification().getVariance() + ":" + element.getValue() + ":"
+                        + element.getPreProcessedValue() + ":" + element.getWeight() + ":" + element.getThreshold() + ":"
+                        + element.getNeighborhoodRange() + ":" + element.getMatchType() + ":"
+                        + ((List<Object>) element.getTokens()).size())
+                .collect(Collectors.toSet());
+    }
+
+    private List<String> getKeys(Iterator<Document> iterator) {
+        List<String> keys = new ArrayList<>();
+        iterator.forEachRemaining(document -> keys.add(document.getKey()));
+        return keys;
+    }
+
+    private List<Document> getDocuments() throws FileNotFoundException {
+        return new MatchServiceTest().getTestDocuments();
+    }
+}
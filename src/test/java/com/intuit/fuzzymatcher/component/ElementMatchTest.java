@@ -4,6 +4,8 @@ import com.intuit.fuzzymatcher.domain.Document;
 import com.intuit.fuzzymatcher.domain.Element;
 import com.intuit.fuzzymatcher.domain.ElementType;
 import com.intuit.fuzzymatcher.domain.Match;
+import com.intuit.fuzzymatcher.domain.MatchType;
+import com.intuit.fuzzymatcher.function.TokenizerFunction;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -43,6 +45,24 @@ public class ElementMatchTest {
         Assert.assertEquals(1.0, matchSet.iterator().next().getResult(), 0.0);
     }
 
+    @Test
+    public void itShouldMatchSeveralEditDistanceTokensWithOneToken() {
+        // Both tokens of "jon jonn" are within one edit of "john", which gives more matching tokens than john has
+        Element<String> element1 = new Element.Builder<String>().setType(NAME).setValue("john")
+                .setMatchType(MatchType.EDIT_DISTANCE).setTokenizerFunction(TokenizerFunction.wordTokenizer())
+                .setThreshold(0.5).createElement();
+        Element<String> element2 = new Element.Builder<String>().setType(NAME).setValue("jon jonn")
+                .setMatchType(MatchType.EDIT_DISTANCE).setTokenizerFunction(TokenizerFunction.wordTokenizer())
+                .setThreshold(0.5).createElement();
+        new Document.Builder("1").addElement(element1).createDocument();
+        new Document.Builder("2").addElement(element2).createDocument();
+
+        elementMatch.matchElement(element1);
+        Set<Match<Element>> matchSet = elementMatch.matchElement(element2);
+        Assert.assertEquals(1, matchSet.size());
+        Assert.assertEquals(1.0, matchSet.iterator().next().getResult(), 0.0);
+    }
+
     @Test
     public void itShouldGiveAverageScoreWithBalancedElements(){
         // 2 match strings out of 5 max - score 0.4
@@ -108,6 +128,45 @@ public class ElementMatchTest {
         Assert.assertEquals(1.0, matchSet.iterator().next().getResult(), 0.0);
     }
 
+    @Test
+    public void itShouldOnlyLookUpTheMatchingElementsWithACandidateFilter() {
+        AtomicInteger lookups = new AtomicInteger();
+        TokenRepo tokenRepo = new TokenRepo() {
+            @Override
+            public Element getElement(int ordinal) {
+                lookups.incrementAndGet();
+                return super.getElement(ordinal);
+            }
+        };
+        ElementMatch filteredMatch = new ElementMatch(tokenRepo, MatchOptions.defaults(), new MatchStatistics());
+        Element element1 = getElement(ADDRESS, "123 new street");
+        Element element2 = getElement(ADDRESS, "456 old road");
+        Element element3 = getElement(ADDRESS, "123 new street");
+        filteredMatch.indexElement(element1);
+        filteredMatch.indexElement(element2);
+
+        Set<Match<Element>> matchSet = filteredMatch.probeElement(element3, element -> element != element1);
+        Assert.assertEquals(0, matchSet.size());
+        Assert.assertEquals(1, lookups.get());
+    }
+
+    @Test
+    public void itShouldCountStopTokensForTheCandidates() {
+        ElementMatch stopTokenMatch = new ElementMatch(new MatchOptions.Builder()
+                .setStopTokenPolicy(StopTokenPolicy.absoluteCap(1)).createMatchOptions(), new MatchStatistics());
+        Element element1 = getElement(ADDRESS, "123 Main Street");
+        Element element2 = getElement(ADDRESS, "456 Oak Street");
+        Element element3 = getElement(ADDRESS, "123 Main Street");
+        stopTokenMatch.indexElement(element1);
+        stopTokenMatch.indexElement(element2);
+
+        // The street token is shared by both indexed elements, so it is a stop token which only counts for element1
+        Set<Match<Element>> matchSet = stopTokenMatch.probeElement(element3);
+        Assert.assertEquals(1, matchSet.size());
+        Assert.assertEquals(element1, matchSet.iterator().next().getMatchedWith());
+        Assert.assertEquals(1.0, matchSet.iterator().next().getResult(), 0.0);
+    }
+
     private Element getElement(ElementType elementType, String value) {
         Element<String> element = new Element.Builder().setType(elementType)
                 .setValue(value).createElement();
@@ -0,0 +1,178 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Document;
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.Match;
+import com.intuit.fuzzymatcher.domain.MatchType;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.intuit.fuzzymatcher.domain.ElementType.*;
+
+public class MappedTokenIndexTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void itShouldMatchSameAsHeapIndex() throws IOException {
+        Path path = write(new MatchServiceTest().getTestDocuments(), 10);
+        MatchIndex mappedIndex = MatchIndex.open(path);
+        MatchIndex heapIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+
+        List<Document> documents = Arrays.asList(
+                getDocument("Probe1", "john doe", "546 freeman ave dallas tx 75024", "2122232235", "john@doe.com"),
+                getDocument("Probe2", "Stephen Wilkson", "45th Ave 5th Street", "5467891234", "steve@wilkson.com"),
+                getDocument("Probe3", "Xavier Qwerty", "1 nowhere", "1111111111", "xavier@qwerty.com"));
+        Map<String, Set<String>> expected = getMatchedKeys(heapIndex.match(documents));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, getMatchedKeys(mappedIndex.match(documents)));
+    }
+
+    @Test
+    public void itShouldReadMatchedDocumentFromFile() throws IOException {
+        Path path = write(new MatchServiceTest().getTestDocuments(), IndexFileFormat.DEFAULT_CHUNK_SHIFT);
+        MatchIndex mappedIndex = MatchIndex.open(path);
+
+        List<Match<Document>> result = mappedIndex.match(
+                getDocument("Probe1", "john doe", "546 freeman ave dallas tx 75024", "2122232235", "john@doe.com"));
+        Assert.assertEquals(1, result.size());
+        Document matchedWith = result.get(0).getMatchedWith();
+        Assert.assertEquals("4", matchedWith.getKey());
+        Assert.assertFalse(matchedWith.isSource());
+        Assert.assertEquals(4, matchedWith.getPreProcessedElement().size());
+        Assert.assertTrue(matchedWith.getElements().stream().anyMatch(element -> "john doe".equals(element.getValue())));
+    }
+
+    @Test
+    public void itShouldMatchWithNearestNeighbors() throws IOException {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            documents.add(new Document.Builder("" + i)
+                    .addElement(new Element.Builder<Integer>().setType(NUMBER).setValue(1000 + i * 7).createElement())
+                    .addElement(new Element.Builder<Date>().setType(DATE).setValue(new Date(86400000L * i)).createElement())
+                    .addElement(new Element.Builder<Double>().setType(AGE).setValue(20D + i % 50).createElement())
+                    .createDocument());
+        }
+        Path path = write(documents, 12);
+        MatchIndex mappedIndex = MatchIndex.open(path);
+        MatchIndex heapIndex = new MatchIndex(documents);
+
+        List<Document> probes = Arrays.asList(
+                new Document.Builder("Probe1")
+                        .addElement(new Element.Builder<Integer>().setType(NUMBER).setValue(1100).createElement())
+                        .addElement(new Element.Builder<Date>().setType(DATE).setValue(new Date(86400000L * 15)).createElement())
+                        .addElement(new Element.Builder<Double>().setType(AGE).setValue(35D).createElement())
+                        .createDocument(),
+                new Document.Builder("Probe2")
+                        .addElement(new Element.Builder<Integer>().setType(NUMBER).setValue(2000).createElement())
+                        .addElement(new Element.Builder<Double>().setType(AGE).setValue(60D).createElement())
+                        .createDocument());
+        Map<String, Set<String>> expected = getMatchedKeys(heapIndex.match(probes));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, getMatchedKeys(mappedIndex.match(probes)));
+    }
+
+    @Test
+    public void itShouldMatchWithEditDistance() throws IOException {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            documents.add(new Document.Builder("" + i)
+                    .addElement(new Element.Builder<String>().setType(TEXT).setValue("ACC-" + (100000 + i * 37))
+                            .setMatchType(MatchType.EDIT_DISTANCE).setMaxEditDistance(2).createElement())
+                    .createDocument());
+        }
+        Path path = write(documents, 12);
+        MatchIndex mappedIndex = MatchIndex.open(path);
+        MatchIndex heapIndex = new MatchIndex(documents);
+
+        List<Document> probes = Arrays.asList(
+                new Document.Builder("Probe1")
+                        .addElement(new Element.Builder<String>().setType(TEXT).setValue("ACC-101110")
+                                .setMatchType(MatchType.EDIT_DISTANCE).setMaxEditDistance(2).createElement())
+                        .createDocument(),
+                new Document.Builder("Probe2")
+                        .addElement(new Element.Builder<String>().setType(TEXT).setValue("XYZ-000000")
+                                .setMatchType(MatchType.EDIT_DISTANCE).setMaxEditDistance(2).createElement())
+                        .createDocument());
+        Map<String, Set<String>> expected = getMatchedKeys(heapIndex.match(probes));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertFalse(expected.containsKey("Probe2"));
+        Assert.assertEquals(expected, getMatchedKeys(mappedIndex.match(probes)));
+    }
+
+    @Test
+    public void itShouldSkipStopTokens() throws IOException {
+        Path path = write(new MatchServiceTest().getTestDocuments(), IndexFileFormat.DEFAULT_CHUNK_SHIFT);
+        MatchOptions matchOptions = new MatchOptions.Builder()
+                .setStopTokenPolicy(StopTokenPolicy.absoluteCap(2)).createMatchOptions();
+        MatchIndex mappedIndex = MatchIndex.open(path, matchOptions);
+        MatchIndex heapIndex = new MatchIndex(new MatchServiceTest().getTestDocuments(), matchOptions);
+
+        List<Document> documents = Collections.singletonList(
+                getDocument("Probe1", "john doe", "546 freeman ave dallas tx 75024", "2122232235", "john@doe.com"));
+        Assert.assertEquals(getMatchedKeys(heapIndex.match(documents)), getMatchedKeys(mappedIndex.match(documents)));
+        Assert.assertEquals(heapIndex.getMatchStatistics().getPrunedTokens(), mappedIndex.getMatchStatistics().getPrunedTokens());
+        Assert.assertTrue(mappedIndex.getMatchStatistics().getPrunedTokens() > 0);
+    }
+
+    @Test
+    public void itShouldMatchWithPrefixFilter() throws IOException {
+        Path path = write(new MatchServiceTest().getTestDocuments(), IndexFileFormat.DEFAULT_CHUNK_SHIFT);
+        MatchIndex mappedIndex = MatchIndex.open(path, new MatchOptions.Builder().setPrefixFilter(true).createMatchOptions());
+        MatchIndex heapIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+
+        List<Document> documents = Arrays.asList(
+                getDocument("Probe1", "john doe", "546 freeman ave dallas tx 75024", "2122232235", "john@doe.com"),
+                getDocument("Probe2", "James Parker", "123 new st. Minneapolis MN", "1232342345", "jparker@gmail.com"));
+        Map<String, Set<String>> expected = getMatchedKeys(heapIndex.match(documents));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, getMatchedKeys(mappedIndex.match(documents)));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void itShouldNotUpdateOpenedIndex() throws IOException {
+        Path path = write(new MatchServiceTest().getTestDocuments(), IndexFileFormat.DEFAULT_CHUNK_SHIFT);
+        MatchIndex.open(path).remove("4");
+    }
+
+    @Test(expected = IOException.class)
+    public void itShouldFailForInvalidFile() throws IOException {
+        Path path = temporaryFolder.newFile().toPath();
+        Files.write(path, new byte[200]);
+        MatchIndex.open(path);
+    }
+
+    private Path write(List<Document> documents, int chunkShift) throws IOException {
+        Path path = temporaryFolder.newFile().toPath();
+        try (TokenIndexWriter tokenIndexWriter = new TokenIndexWriter(path, chunkShift)) {
+            for (Document document : documents) {
+                tokenIndexWriter.add(document);
+            }
+        }
+        return path;
+    }
+
+    private Map<String, Set<String>> getMatchedKeys(Map<Document, List<Match<Document>>> result) {
+        return result.entrySet().stream().collect(Collectors.toMap(entry -> entry.getKey().getKey(), entry -> entry.getValue().stream()
+                .map(match -> match.getMatchedWith().getKey() + ":" + match.getResult())
+                .collect(Collectors.toSet())));
+    }
+
+    private Document getDocument(String key, String name, String address, String phone, String email) {
+        return new Document.Builder(key)
+                .addElement(new Element.Builder().setType(NAME).setValue(name).createElement())
+                .addElement(new Element.Builder().setType(ADDRESS).setValue(address).createElement())
+                .addElement(new Element.Builder().setType(PHONE).setValue(phone).createElement())
+                .addElement(new Element.Builder().setType(EMAIL).setValue(email).createElement())
+                .createDocument();
+    }
+}
@@ -0,0 +1,222 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Document;
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.Match;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static com.intuit.fuzzymatcher.domain.ElementType.*;
+
+public class MatchIndexTest {
+
+    private MatchService matchService = new MatchService();
+
+    @Test
+    public void itShouldMatchDocumentWithIndex() throws FileNotFoundException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+
+        List<Match<Document>> result = matchIndex.match(getDocument("TestMatch", "john doe"));
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("TestMatch", result.get(0).getData().getKey());
+    }
+
+    @Test
+    public void itShouldMatchSameAsMatchService() throws FileNotFoundException {
+        List<Document> matchWith = new MatchServiceTest().getTestDocuments();
+        MatchIndex matchIndex = new MatchIndex(matchWith);
+
+        Document document = getDocument("TestMatch", "john doe");
+        Map<String, List<Match<Document>>> expected = matchService.applyMatchByDocId(document, matchWith);
+
+        List<Match<Document>> result = matchIndex.match(document);
+        Assert.assertEquals(expected.get("TestMatch").stream().map(m -> m.getMatchedWith().getKey()).sorted().collect(Collectors.toList()),
+                result.stream().map(m -> m.getMatchedWith().getKey()).sorted().collect(Collectors.toList()));
+        Assert.assertEquals(expected.get("TestMatch").get(0).getResult(), result.get(0).getResult(), 0.0);
+    }
+
+    @Test
+    public void itShouldNotIndexProbedDocuments() throws FileNotFoundException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+
+        Document doc1 = getDocument("Probe1", "Stephen Wilkson");
+        Document doc2 = getDocument("Probe2", "Stephen Wilkson");
+
+        Map<Document, List<Match<Document>>> result = matchIndex.match(Arrays.asList(doc1, doc2));
+        Assert.assertTrue(result.values().stream().flatMap(List::stream)
+                .noneMatch(match -> match.getMatchedWith().getKey().startsWith("Probe")));
+
+        Assert.assertTrue(matchIndex.match(getDocument("Probe3", "Stephen Wilkson")).stream()
+                .noneMatch(match -> match.getMatchedWith().getKey().startsWith("Probe")));
+    }
+
+    @Test
+    public void itShouldMatchInParallel() throws FileNotFoundException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+        MatchIndex parallelIndex = new MatchIndex(new MatchServiceTest().getTestDocuments(),
+                new MatchOptions.Builder().setParallel(true).createMatchOptions());
+
+        List<Document> documents = Arrays.asList(getDocument("Probe1", "john doe"), getDocument("Probe2", "Stephen Wilkson"));
+        Assert.assertEquals(getMatchedKeys(matchIndex.match(documents)), getMatchedKeys(parallelIndex.match(documents)));
+    }
+
+    @Test
+    public void itShouldMatchWithValueCache() throws FileNotFoundException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+        MatchIndex valueCacheIndex = new MatchIndex(new MatchServiceTest().getTestDocuments(),
+                new MatchOptions.Builder().setValueCache(true).createMatchOptions());
+
+        List<Document> documents = Arrays.asList(getDocument("Probe1", "john doe"), getDocument("Probe2", "John Doe "),
+                getDocument("Probe3", "Stephen Wilkson"), getDocument("Probe4", "stephen wilkson"));
+        Assert.assertEquals(getMatchedKeys(matchIndex.match(documents)), getMatchedKeys(valueCacheIndex.match(documents)));
+        Assert.assertTrue(valueCacheIndex.getMatchStatistics().getProbedTokens()
+                < matchIndex.getMatchStatistics().getProbedTokens());
+    }
+
+    @Test
+    public void itShouldMatchAsStream() throws FileNotFoundException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+
+        List<Document> documents = Arrays.asList(getDocument("Probe1", "john doe"), getDocument("Probe2", "Stephen Wilkson"));
+        Assert.assertEquals(getMatchedKeys(matchIndex.match(documents)), getMatchedKeys(matchIndex.matchAsStream(documents.stream())
+                .collect(Collectors.groupingBy(Match::getData))));
+    }
+
+    @Test
+    public void itShouldReturnEmptyForNoMatch() throws FileNotFoundException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+        Document document = new Document.Builder("NoMatch")
+                .addElement(new Element.Builder().setType(NAME).setValue("Xavier Qwerty").createElement())
+                .createDocument();
+        Assert.assertTrue(matchIndex.match(document).isEmpty());
+    }
+
+    @Test
+    public void itShouldUpsertNewDocument() throws FileNotFoundException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+        Assert.assertTrue(matchIndex.match(getDocument("Probe1", "Xavier Qwerty", "xavier@qwerty.com")).isEmpty());
+
+        matchIndex.upsert(getDocument("New1", "Xavier Qwerty", "xavier@qwerty.com"));
+        List<Match<Document>> result = matchIndex.match(getDocument("Probe1", "Xavier Qwerty", "xavier@qwerty.com"));
+        Assert.assertEquals(1, result.size());
+        Assert.assertEquals("New1", result.get(0).getMatchedWith().getKey());
+    }
+
+    @Test
+    public void itShouldReplaceDocumentWithSameKey() throws FileNotFoundException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+        Assert.assertEquals(Collections.singletonList("4"), getMatchedKeys(matchIndex.match(getDocument("Probe1", "john doe"))));
+
+        matchIndex.upsert(getDocument("4", "Xavier Qwerty", "xavier@qwerty.com"));
+        Assert.assertTrue(matchIndex.match(getDocument("Probe1", "john doe")).isEmpty());
+        Assert.assertEquals(Collections.singletonList("4"),
+                getMatchedKeys(matchIndex.match(getDocument("Probe2", "Xavier Qwerty", "xavier@qwerty.com"))));
+    }
+
+    @Test
+    public void itShouldRemoveDocument() throws FileNotFoundException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+        Assert.assertFalse(matchIndex.match(getDocument("Probe1", "john doe")).isEmpty());
+
+        Assert.assertTrue(matchIndex.remove("4"));
+        Assert.assertFalse(matchIndex.remove("4"));
+        Assert.assertTrue(matchIndex.match(getDocument("Probe1", "john doe")).isEmpty());
+
+        matchIndex.compact();
+        Assert.assertTrue(matchIndex.match(getDocument("Probe1", "john doe")).isEmpty());
+        Assert.assertFalse(matchIndex.match(getDocument("Probe2", "James Parker", "jparker@gmail.com")).isEmpty());
+    }
+
+    @Test
+    public void itShouldCompactInBackground() {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            documents.add(getDocument("" + i, "Name" + i, "name" + i + "@domain.com"));
+        }
+        MatchIndex matchIndex = new MatchIndex(documents, new MatchOptions.Builder().setExecutor(Runnable::run).createMatchOptions());
+        for (int i = 0; i < 1500; i++) {
+            matchIndex.remove("" + i);
+        }
+        // The executor runs the compaction in the calling thread, so it is complete once remove returns
+        Assert.assertTrue(matchIndex.getTokenRepo().getPendingRemovals() < 1024);
+        List<String> keys = getMatchedKeys(matchIndex.match(getDocument("Probe1", "Name1501", "name1501@domain.com")));
+        Assert.assertTrue(keys.contains("1501"));
+        Assert.assertTrue(keys.stream().allMatch(key -> Integer.parseInt(key) >= 1500));
+    }
+
+    @Test
+    public void itShouldRebuildWithCurrentDocuments() throws FileNotFoundException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+        for (int i = 0; i < 10; i++) {
+            matchIndex.upsert(getDocument("4", "john doe" + i));
+        }
+        matchIndex.upsert(getDocument("4", "john doe"));
+        matchIndex.remove("1");
+        int size = matchIndex.getTokenRepo().size();
+
+        matchIndex.rebuild();
+        Assert.assertTrue(matchIndex.getTokenRepo().size() < size);
+        Assert.assertEquals(0, matchIndex.getTokenRepo().getPendingRemovals());
+        Assert.assertEquals(Collections.singletonList("4"),
+                getMatchedKeys(matchIndex.match(getDocument("Probe1", "john doe"))));
+
+        Assert.assertTrue(matchIndex.remove("4"));
+        Assert.assertTrue(matchIndex.match(getDocument("Probe1", "john doe")).isEmpty());
+    }
+
+    @Test
+    public void itShouldMatchDocumentsOfSameBlock() {
+        MatchIndex matchIndex = new MatchIndex(Arrays.asList(
+                getBlockedDocument("1", "James Parker", "Tenant1"),
+                getBlockedDocument("2", "James Parker", "Tenant2"),
+                getBlockedDocument("3", "James Parker", null)));
+
+        Assert.assertEquals(Collections.singletonList("1"),
+                getMatchedKeys(matchIndex.match(getBlockedDocument("Probe1", "James Parker", "Tenant1"))));
+        Assert.assertEquals(Collections.singletonList("3"),
+                getMatchedKeys(matchIndex.match(getBlockedDocument("Probe2", "James Parker", null))));
+        Assert.assertTrue(matchIndex.match(getBlockedDocument("Probe3", "James Parker", "Tenant3")).isEmpty());
+    }
+
+    private List<String> getMatchedKeys(List<Match<Document>> result) {
+        return result.stream().map(m -> m.getMatchedWith().getKey()).sorted().collect(Collectors.toList());
+    }
+
+    private Map<String, List<String>> getMatchedKeys(Map<Document, List<Match<Document>>> result) {
+        return result.entrySet().stream().collect(Collectors.toMap(entry -> entry.getKey().getKey(),
+                entry -> entry.getValue().stream().map(m -> m.getMatchedWith().getKey()).sorted().collect(Collectors.toList())));
+    }
+
+    private Document getDocument(String key, String name) {
+        return new Document.Builder(key)
+                .addElement(new Element.Builder().setType(NAME).setValue(name).createElement())
+                .addElement(new Element.Builder().setType(ADDRESS).setValue("546 freeman ave dallas tx 75024").createElement())
+                .addElement(new Element.Builder().setType(PHONE).setValue("2122232235").createElement())
+                .addElement(new Element.Builder().setType(EMAIL).setValue("john@doe.com").createElement())
+                .createDocument();
+    }
+
+    private Document getDocument(String key, String name, String email) {
+        return new Document.Builder(key)
+                .addElement(new Element.Builder().setType(NAME).setValue(name).createElement())
+                .addElement(new Element.Builder().setType(EMAIL).setValue(email).createElement())
+                .createDocument();
+    }
+
+    private Document getBlockedDocument(String key, String name, String blockingKey) {
+        Document.Builder builder = new Document.Builder(key)
+                .addElement(new Element.Builder().setType(NAME).setValue(name).createElement());
+        if (blockingKey != null) {
+            builder.addBlockingKey(blockingKey);
+        }
+        return builder.createDocument();
+    }
+}
@@ -0,0 +1,170 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Document;
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.Match;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.intuit.fuzzymatcher.domain.ElementType.NAME;
+
+public class MatchPublisherTest {
+
+    @Test
+    public void itShouldOnlyMatchDocumentsOnDemand() {
+        AtomicInteger read = new AtomicInteger();
+        MatchService matchService = new MatchService();
+        Flow.Publisher<Match<Document>> publisher = matchService.applyMatch(getPublisher(getDocuments(100), read));
+
+        List<Match<Document>> matches = new ArrayList<>();
+        AtomicReference<Flow.Subscription> subscription = new AtomicReference<>();
+        AtomicInteger completed = new AtomicInteger();
+        publisher.subscribe(new Flow.Subscriber<Match<Document>>() {
+            @Override
+            public void onSubscribe(Flow.Subscription s) {
+                subscription.set(s);
+            }
+
+            @Override
+            public void onNext(Match<Document> match) {
+                matches.add(match);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                Assert.fail(throwable.getMessage());
+            }
+
+            @Override
+            public void onComplete() {
+                completed.incrementAndGet();
+            }
+        });
+        Assert.assertEquals(0, read.get());
+
+        // The first two documents match, which gives a match in each direction
+        subscription.get().request(1);
+        Assert.assertEquals(1, matches.size());
+        Assert.assertEquals(2, read.get());
+
+        subscription.get().request(1);
+        Assert.assertEquals(2, matches.size());
+        Assert.assertEquals(2, read.get());
+
+        subscription.get().request(Long.MAX_VALUE);
+        Assert.assertEquals(100, read.get());
+        Assert.assertEquals(1, completed.get());
+        Assert.assertEquals(matchService.applyMatch(getDocuments(100)).values().stream().mapToInt(List::size).sum(),
+                matches.size());
+    }
+
+    @Test
+    public void itShouldStopMatchingOnCancel() {
+        AtomicInteger read = new AtomicInteger();
+        Flow.Publisher<Match<Document>> publisher = new MatchService().applyMatch(getPublisher(getDocuments(100), read));
+        AtomicInteger received = new AtomicInteger();
+        publisher.subscribe(new Flow.Subscriber<Match<Document>>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                this.subscription = subscription;
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(Match<Document> match) {
+                if (received.incrementAndGet() == 3) {
+                    subscription.cancel();
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                Assert.fail(throwable.getMessage());
+            }
+
+            @Override
+            public void onComplete() {
+                Assert.fail();
+            }
+        });
+        Assert.assertEquals(3, received.get());
+        Assert.assertTrue(read.get() < 10);
+    }
+
+    @Test
+    public void itShouldOnlyAcceptASingleSubscriber() {
+        Flow.Publisher<Match<Document>> publisher = new MatchService().applyMatch(getPublisher(getDocuments(2), new AtomicInteger()));
+        publisher.subscribe(new CollectingSubscriber());
+        CollectingSubscriber second = new CollectingSubscriber();
+        publisher.subscribe(second);
+        Assert.assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    private List<Document> getDocuments(int count) {
+        return IntStream.range(0, count).mapToObj(i -> new Document.Builder("" + i)
+                .addElement(new Element.Builder<String>().setType(NAME).setValue("James Parker " + (i / 2)).createElement())
+                .createDocument())
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * A publisher emitting the documents synchronously as they are requested
+     */
+    private Flow.Publisher<Document> getPublisher(List<Document> documents, AtomicInteger read) {
+        Iterator<Document> iterator = documents.iterator();
+        return subscriber -> subscriber.onSubscribe(new Flow.Subscription() {
+            private boolean done;
+
+            @Override
+            public void request(long n) {
+                for (long i = 0; i < n && !done; i++) {
+                    if (iterator.hasNext()) {
+                        read.incrementAndGet();
+                        subscriber.onNext(iterator.next());
+                    } else {
+                        done = true;
+                        subscriber.onComplete();
+                    }
+                }
+            }
+
+            @Override
+            public void cancel() {
+                done = true;
+            }
+        });
+    }
+
+    private static class CollectingSubscriber implements Flow.Subscriber<Match<Document>> {
+
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+        }
+
+        @Override
+        public void onNext(Match<Document> match) {
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+        }
+    }
+}
@@ -3,6 +3,7 @@ package com.intuit.fuzzymatcher.component;
 import com.intuit.fuzzymatcher.domain.Document;
 import com.intuit.fuzzymatcher.domain.Element;
 import com.intuit.fuzzymatcher.domain.Match;
+import com.sun.management.ThreadMXBean;
 import org.apache.commons.lang3.StringUtils;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -10,6 +11,7 @@ import org.slf4j.LoggerFactory;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.List;
 import java.util.Map;
 import java.util.StringJoiner;
@@ -74,6 +76,24 @@ public class MatchServicePerfTest {
         recordMemoryUsage(() -> applyMatch(leftDoc, rightDoc), 10);
     }
 
+    @Test
+    public void itShouldApplyMatchForBigDataForAllocationPerf() throws FileNotFoundException {
+        List<Document> documents = getBigDataDocuments().limit(6000).collect(Collectors.toList());
+        MatchIndex matchIndex = new MatchIndex(documents);
+        ThreadMXBean threadMXBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+
+        // The first pass warms up the probe path, and sizes the reused candidate counts
+        matchIndex.match(documents);
+        long startBytes = threadMXBean.getThreadAllocatedBytes(threadId);
+        long startTime = System.nanoTime();
+        matchIndex.match(documents);
+        long duration = (System.nanoTime() - startTime) / 1000000;
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - startBytes;
+        System.out.println("Execution time (ms) for probes : " + duration);
+        System.out.println("Allocated (mb) for probes : " + allocated / 1000000D);
+    }
+
     private void applyMatch(List<Document> documentList) {
         long startTime = System.nanoTime();
         Map<String, List<Match<Document>>> result = matchService.applyMatchByDocId(documentList);
@@ -4,7 +4,9 @@ import com.intuit.fuzzymatcher.domain.Document;
 import com.intuit.fuzzymatcher.domain.Element;
 import com.intuit.fuzzymatcher.domain.ElementType;
 import com.intuit.fuzzymatcher.domain.Match;
+import com.intuit.fuzzymatcher.domain.MatchType;
 import com.intuit.fuzzymatcher.function.PreProcessFunction;
+import com.intuit.fuzzymatcher.function.TokenizerFunction;
 import com.opencsv.CSVReader;
 import com.opencsv.CSVReaderBuilder;
 import com.opencsv.CSVWriter;
@@ -22,9 +24,17 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
@@ -109,6 +119,278 @@ public class MatchServiceTest {
         Assert.assertEquals(1, result.size());
     }
 
+    @Test
+    public void itShouldApplyMatchWithProbeOnly() throws IOException {
+        List<Document> documents = Arrays.asList(
+                new Document.Builder("New1")
+                        .addElement(new Element.Builder().setType(NAME).setValue("Xavier Qwerty").createElement())
+                        .addElement(new Element.Builder().setType(EMAIL).setValue("xavier@qwerty.com").createElement())
+                        .createDocument(),
+                new Document.Builder("New2")
+                        .addElement(new Element.Builder().setType(NAME).setValue("Xavier Qwerty").createElement())
+                        .addElement(new Element.Builder().setType(EMAIL).setValue("xavier@qwerty.com").createElement())
+                        .createDocument());
+
+        Map<String, List<Match<Document>>> result = matchService.applyMatchByDocId(documents, getTestDocuments());
+        Assert.assertEquals(2, result.size());
+
+        MatchService probeOnlyService = new MatchService(new MatchOptions.Builder().setProbeOnly(true).createMatchOptions());
+        Map<String, List<Match<Document>>> probeOnlyResult = probeOnlyService.applyMatchByDocId(documents, getTestDocuments());
+        Assert.assertTrue(probeOnlyResult.isEmpty());
+    }
+
+    @Test
+    public void itShouldApplyMatchWithProbeOnlyForExistingList() throws IOException {
+        Document doc = new Document.Builder("TestMatch")
+                .addElement(new Element.Builder().setType(NAME).setValue("john doe").createElement())
+                .addElement(new Element.Builder().setType(ADDRESS).setValue("546 freeman ave dallas tx 75024").createElement())
+                .addElement(new Element.Builder().setType(PHONE).setValue("2122232235").createElement())
+                .addElement(new Element.Builder().setType(EMAIL).setValue("john@doe.com").createElement())
+                .createDocument();
+        MatchService probeOnlyService = new MatchService(new MatchOptions.Builder().setProbeOnly(true).createMatchOptions());
+        Map<String, List<Match<Document>>> result = probeOnlyService.applyMatchByDocId(doc, getTestDocuments());
+        Assert.assertEquals(1, result.size());
+    }
+
+    @Test
+    public void itShouldRecordPrunedTokensInStatistics() throws IOException {
+        Map<String, List<Match<Document>>> result = matchService.applyMatchByDocId(getTestDocuments());
+        Assert.assertEquals(0, matchService.getMatchStatistics().getPrunedTokens());
+
+        MatchService pruningService = new MatchService(new MatchOptions.Builder()
+                .setStopTokenPolicy(StopTokenPolicy.absoluteCap(5)).createMatchOptions());
+        Map<String, List<Match<Document>>> prunedResult = pruningService.applyMatchByDocId(getTestDocuments());
+        MatchStatistics matchStatistics = pruningService.getMatchStatistics();
+        Assert.assertTrue(matchStatistics.getPrunedTokens() > 0);
+        Assert.assertEquals(matchService.getMatchStatistics().getProbedTokens(),
+                matchStatistics.getProbedTokens() + matchStatistics.getPrunedTokens());
+        Assert.assertTrue(matchStatistics.getScannedPostings() < matchService.getMatchStatistics().getScannedPostings());
+        Assert.assertTrue(result.keySet().containsAll(prunedResult.keySet()));
+    }
+
+    @Test
+    public void itShouldApplyMatchInParallel() throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            MatchService parallelService = new MatchService(new MatchOptions.Builder()
+                    .setParallel(true).setExecutor(executor).createMatchOptions());
+
+            Assert.assertEquals(getMatchedKeys(matchService.applyMatchByDocId(getTestDocuments())),
+                    getMatchedKeys(parallelService.applyMatchByDocId(getTestDocuments())));
+
+            Assert.assertEquals(getMatchedKeys(matchService.applyMatchByDocId(getGeneratedDocuments("A", 400))),
+                    getMatchedKeys(parallelService.applyMatchByDocId(getGeneratedDocuments("A", 400))));
+
+            MatchService probeOnlyService = new MatchService(new MatchOptions.Builder()
+                    .setProbeOnly(true).createMatchOptions());
+            MatchService parallelProbeOnlyService = new MatchService(new MatchOptions.Builder()
+                    .setProbeOnly(true).setParallel(true).setExecutor(executor).createMatchOptions());
+            Assert.assertEquals(
+                    getMatchedKeys(probeOnlyService.applyMatchByDocId(getGeneratedDocuments("S", 200), getGeneratedDocuments("R", 300))),
+                    getMatchedKeys(parallelProbeOnlyService.applyMatchByDocId(getGeneratedDocuments("S", 200), getGeneratedDocuments("R", 300))));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void itShouldApplyMatchWithPrefixFilter() throws IOException {
+        MatchService prefixFilterService = new MatchService(new MatchOptions.Builder()
+                .setPrefixFilter(true).createMatchOptions());
+
+        Assert.assertEquals(getMatchedKeys(matchService.applyMatchByDocId(getTestDocuments())),
+                getMatchedKeys(prefixFilterService.applyMatchByDocId(getTestDocuments())));
+        Assert.assertEquals(getMatchedKeys(matchService.applyMatchByDocId(getGeneratedDocuments("A", 400))),
+                getMatchedKeys(prefixFilterService.applyMatchByDocId(getGeneratedDocuments("A", 400))));
+
+        MatchService bigDataService = new MatchService();
+        MatchService bigDataPrefixFilterService = new MatchService(new MatchOptions.Builder()
+                .setPrefixFilter(true).createMatchOptions());
+        Map<String, Set<String>> expected = getMatchedKeys(bigDataService.applyMatchByDocId(
+                new MatchServicePerfTest().getBigDataDocuments().limit(1500).collect(Collectors.toList())));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, getMatchedKeys(bigDataPrefixFilterService.applyMatchByDocId(
+                new MatchServicePerfTest().getBigDataDocuments().limit(1500).collect(Collectors.toList()))));
+        Assert.assertTrue(bigDataPrefixFilterService.getMatchStatistics().getScoreUpdates()
+                < bigDataService.getMatchStatistics().getScoreUpdates() / 2);
+    }
+
+    @Test
+    public void itShouldApplyMatchWithValueCache() throws IOException {
+        MatchService valueCacheService = new MatchService(new MatchOptions.Builder()
+                .setValueCache(true).createMatchOptions());
+        Assert.assertEquals(getMatchedKeys(matchService.applyMatchByDocId(getTestDocuments())),
+                getMatchedKeys(valueCacheService.applyMatchByDocId(getTestDocuments())));
+        Assert.assertEquals(getMatchedKeys(matchService.applyMatchByDocId(getGeneratedDocuments("A", 400))),
+                getMatchedKeys(valueCacheService.applyMatchByDocId(getGeneratedDocuments("A", 400))));
+
+        MatchService parallelValueCacheService = new MatchService(new MatchOptions.Builder()
+                .setValueCache(true).setParallel(true).createMatchOptions());
+        Assert.assertEquals(getMatchedKeys(matchService.applyMatchByDocId(getGeneratedDocuments("A", 400))),
+                getMatchedKeys(parallelValueCacheService.applyMatchByDocId(getGeneratedDocuments("A", 400))));
+
+        // The reference documents are all indexed before the source documents, so each distinct value is probed once
+        MatchService probeOnlyService = new MatchService(new MatchOptions.Builder()
+                .setProbeOnly(true).createMatchOptions());
+        MatchService probeOnlyValueCacheService = new MatchService(new MatchOptions.Builder()
+                .setProbeOnly(true).setValueCache(true).createMatchOptions());
+        Assert.assertEquals(
+                getMatchedKeys(probeOnlyService.applyMatchByDocId(getGeneratedDocuments("S", 200), getGeneratedDocuments("R", 300))),
+                getMatchedKeys(probeOnlyValueCacheService.applyMatchByDocId(getGeneratedDocuments("S", 200), getGeneratedDocuments("R", 300))));
+        Assert.assertTrue(probeOnlyValueCacheService.getMatchStatistics().getProbedTokens()
+                < probeOnlyService.getMatchStatistics().getProbedTokens() / 2);
+    }
+
+    @Test
+    public void itShouldApplyMatchWithCollapsedDuplicates() {
+        MatchService collapseService = new MatchService(new MatchOptions.Builder()
+                .setCollapseDuplicates(true).createMatchOptions());
+        MatchService plainService = new MatchService();
+        Map<String, Map<String, Double>> expected = getMatchedScores(plainService.applyMatchByDocId(getDuplicatedDocuments("A", 300)));
+        assertSameScores(expected, getMatchedScores(collapseService.applyMatchByDocId(getDuplicatedDocuments("A", 300))));
+        Assert.assertTrue(collapseService.getMatchStatistics().getProbedTokens()
+                < plainService.getMatchStatistics().getProbedTokens() / 4);
+
+        MatchService parallelCollapseService = new MatchService(new MatchOptions.Builder()
+                .setCollapseDuplicates(true).setParallel(true).createMatchOptions());
+        assertSameScores(expected, getMatchedScores(parallelCollapseService.applyMatchByDocId(getDuplicatedDocuments("A", 300))));
+
+        for (boolean probeOnly : new boolean[]{false, true}) {
+            MatchService existingListService = new MatchService(new MatchOptions.Builder()
+                    .setProbeOnly(probeOnly).createMatchOptions());
+            MatchService existingListCollapseService = new MatchService(new MatchOptions.Builder()
+                    .setProbeOnly(probeOnly).setCollapseDuplicates(true).createMatchOptions());
+            assertSameScores(
+                    getMatchedScores(existingListService.applyMatchByDocId(getDuplicatedDocuments("S", 200), getDuplicatedDocuments("R", 300))),
+                    getMatchedScores(existingListCollapseService.applyMatchByDocId(getDuplicatedDocuments("S", 200), getDuplicatedDocuments("R", 300))));
+        }
+    }
+
+    @Test
+    public void itShouldApplyMatchWithPrefixFilterForNearestNeighbors() throws IOException {
+        List<Document> documents = IntStream.range(0, 300).mapToObj(i -> new Document.Builder("" + i)
+                .addElement(new Element.Builder<Integer>().setType(NUMBER).setValue(1000 + (i % 40) * 13).createElement())
+                .addElement(new Element.Builder<Double>().setType(AGE).setValue(20D + i % 50).createElement())
+                .addElement(new Element.Builder<String>().setType(NAME).setValue("Steven Wilson " + (i % 7)).createElement())
+                .createDocument())
+                .collect(Collectors.toList());
+        MatchService prefixFilterService = new MatchService(new MatchOptions.Builder()
+                .setPrefixFilter(true).setStopTokenPolicy(StopTokenPolicy.percentile(0.9)).createMatchOptions());
+        MatchService stopTokenService = new MatchService(new MatchOptions.Builder()
+                .setStopTokenPolicy(StopTokenPolicy.percentile(0.9)).createMatchOptions());
+        Map<String, Set<String>> expected = getMatchedKeys(stopTokenService.applyMatchByDocId(documents));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, getMatchedKeys(prefixFilterService.applyMatchByDocId(documents)));
+    }
+
+    @Test
+    public void itShouldApplyMatchWithMinHash() throws IOException {
+        MatchService exactService = new MatchService();
+        Map<String, Set<String>> expected = getMatchedDocumentKeys(exactService.applyMatchByDocId(getEmailDocuments()));
+        Assert.assertFalse(expected.isEmpty());
+
+        // With many short bands the similar emails collide in at least one band
+        MatchService minHashService = new MatchService(new MatchOptions.Builder()
+                .setMinHash(EMAIL, 32, 1).createMatchOptions());
+        Assert.assertEquals(expected, getMatchedDocumentKeys(minHashService.applyMatchByDocId(getEmailDocuments())));
+
+        // Long bands only keep the most similar candidates, with a loss of recall but far fewer scores updated
+        MatchService strictService = new MatchService(new MatchOptions.Builder()
+                .setMinHash(EMAIL, 4, 4).createMatchOptions());
+        Map<String, Set<String>> result = getMatchedDocumentKeys(strictService.applyMatchByDocId(getEmailDocuments()));
+        result.forEach((key, matchedKeys) -> Assert.assertTrue(expected.get(key).containsAll(matchedKeys)));
+        Assert.assertTrue(strictService.getMatchStatistics().getScoreUpdates()
+                < exactService.getMatchStatistics().getScoreUpdates() / 2);
+    }
+
+    @Test
+    public void itShouldApplyMatchWithinBlocks() {
+        Map<String, Set<String>> expected = new HashMap<>();
+        for (int block = 0; block < 3; block++) {
+            int tenant = block;
+            List<Document> blockDocuments = getGeneratedDocuments("A", 400).stream()
+                    .filter(document -> Integer.parseInt(document.getKey().substring(1)) % 3 == tenant)
+                    .collect(Collectors.toList());
+            expected.putAll(getMatchedKeys(new MatchService().applyMatchByDocId(blockDocuments)));
+        }
+        Assert.assertFalse(expected.isEmpty());
+
+        Assert.assertEquals(expected, getMatchedKeys(matchService.applyMatchByDocId(getBlockedDocuments(400))));
+        MatchService parallelService = new MatchService(new MatchOptions.Builder().setParallel(true).createMatchOptions());
+        Assert.assertEquals(expected, getMatchedKeys(parallelService.applyMatchByDocId(getBlockedDocuments(400))));
+    }
+
+    @Test
+    public void itShouldApplyMatchOnceForDocumentsSharingBlocks() {
+        List<Document> documents = new ArrayList<>();
+        for (String key : new String[]{"1", "2"}) {
+            documents.add(new Document.Builder(key)
+                    .addElement(new Element.Builder().setType(NAME).setValue("James Parker").createElement())
+                    .addBlockingKey("US").addBlockingKey("Tenant1")
+                    .createDocument());
+        }
+        documents.add(new Document.Builder("3")
+                .addElement(new Element.Builder().setType(NAME).setValue("James Parker").createElement())
+                .addBlockingKey("CA")
+                .createDocument());
+
+        Map<String, List<Match<Document>>> result = matchService.applyMatchByDocId(documents);
+        Assert.assertEquals(2, result.size());
+        Assert.assertEquals(1, result.get("1").size());
+        Assert.assertEquals("2", result.get("1").get(0).getMatchedWith().getKey());
+        Assert.assertEquals(1, result.get("2").size());
+
+        MatchService parallelService = new MatchService(new MatchOptions.Builder().setParallel(true).createMatchOptions());
+        Assert.assertEquals(getMatchedKeys(result), getMatchedKeys(parallelService.applyMatchByDocId(documents)));
+    }
+
+    @Test
+    public void itShouldApplySortedNeighborhoodMatch() throws IOException {
+        List<Document> documents = new MatchServicePerfTest().getBigDataDocuments().limit(300).collect(Collectors.toList());
+        Map<String, Set<String>> expected = getMatchedKeys(matchService.applyMatchByDocId(documents));
+        Assert.assertFalse(expected.isEmpty());
+
+        // A window holding all the documents compares every pair, even with the documents spilled in several runs
+        SortedNeighborhood allPairs = new SortedNeighborhood.Builder()
+                .addSortKey(SortedNeighborhood.tokens(NAME, 8), SortedNeighborhood.preProcessedValue(PHONE, 3))
+                .setWindowSize(300).setRunSize(64).createSortedNeighborhood();
+        Assert.assertEquals(expected, getMatchedKeys(matchService.applySortedNeighborhoodMatch(
+                new MatchServicePerfTest().getBigDataDocuments().limit(300), allPairs)));
+
+        // A small window only finds the pairs sorted close to each other, and each pair once across the passes
+        SortedNeighborhood window = new SortedNeighborhood.Builder()
+                .addSortKey(SortedNeighborhood.tokens(NAME, 8))
+                .addSortKey(SortedNeighborhood.preProcessedValue(EMAIL, 6))
+                .setWindowSize(5).setRunSize(64).createSortedNeighborhood();
+        Map<String, List<Match<Document>>> result = matchService.applySortedNeighborhoodMatch(
+                new MatchServicePerfTest().getBigDataDocuments().limit(300), window);
+        Assert.assertFalse(result.isEmpty());
+        getMatchedKeys(result).forEach((key, matchedKeys) -> Assert.assertTrue(expected.get(key).containsAll(matchedKeys)));
+        result.values().forEach(matches -> Assert.assertEquals(matches.size(),
+                matches.stream().map(match -> match.getMatchedWith().getKey()).distinct().count()));
+    }
+
+    @Test
+    public void itShouldApplySortedNeighborhoodMatchWithCustomTokenizer() throws IOException {
+        // The whole name is a single token, so the reversed name does not match as it would with the default tokenizer
+        Function<Integer, Stream<Document>> documents = count -> IntStream.range(0, count).mapToObj(i -> {
+            String suffix = " " + (char) ('a' + i / 3) + (char) ('a' + i / 3);
+            String name = i % 3 == 2 ? "Parker James" + suffix : "James Parker" + suffix;
+            return new Document.Builder("" + i)
+                    .addElement(new Element.Builder<String>().setType(NAME).setValue(name)
+                            .setTokenizerFunction(TokenizerFunction.valueTokenizer()).createElement())
+                    .createDocument();
+        });
+        SortedNeighborhood inMemory = new SortedNeighborhood.Builder().addSortKey(Document::getKey)
+                .setWindowSize(30).setRunSize(30).createSortedNeighborhood();
+        SortedNeighborhood spilled = new SortedNeighborhood.Builder().addSortKey(Document::getKey)
+                .setWindowSize(30).setRunSize(4).createSortedNeighborhood();
+
+        Map<String, Set<String>> expected = getMatchedKeys(matchService.applySortedNeighborhoodMatch(documents.apply(30), inMemory));
+        Assert.assertEquals(Collections.singleton("1:1.0"), expected.get("0"));
+        Assert.assertEquals(expected, getMatchedKeys(matchService.applySortedNeighborhoodMatch(documents.apply(30), spilled)));
+    }
+
     @Test
     public void itShouldApplyMatchByDocIdForAList() throws IOException {
         Map<String, List<Match<Document>>> result = matchService.applyMatchByDocId(getTestDocuments());
@@ -123,6 +405,112 @@ public class MatchServiceTest {
         Assert.assertEquals(2, result.size());
     }
 
+    @Test
+    public void itShouldApplyMatchByGroupsForGeneratedData() {
+        Map<String, List<Match<Document>>> matches = matchService.applyMatchByDocId(getGeneratedDocuments("A", 400));
+        for (boolean parallel : new boolean[]{false, true}) {
+            MatchService groupService = new MatchService(new MatchOptions.Builder().setParallel(parallel).createMatchOptions());
+            Set<Set<Match<Document>>> result = groupService.applyMatchByGroups(getGeneratedDocuments("A", 400));
+
+            Set<String> groupedKeys = new HashSet<>();
+            Set<String> pairs = new HashSet<>();
+            result.forEach(group -> {
+                Set<String> keys = new HashSet<>();
+                group.forEach(match -> {
+                    keys.add(match.getData().getKey());
+                    keys.add(match.getMatchedWith().getKey());
+                    Assert.assertTrue(pairs.add(match.getData().getKey() + ":" + match.getMatchedWith().getKey()));
+                    Assert.assertFalse(pairs.contains(match.getMatchedWith().getKey() + ":" + match.getData().getKey()));
+                });
+                // Every match of a document of the group is within the group
+                keys.forEach(key -> matches.get(key).forEach(match ->
+                        Assert.assertTrue(keys.contains(match.getMatchedWith().getKey()))));
+                keys.forEach(key -> Assert.assertTrue(groupedKeys.add(key)));
+            });
+            Assert.assertEquals(matches.keySet(), groupedKeys);
+            Assert.assertEquals(matches.values().stream().mapToInt(List::size).sum() / 2, pairs.size());
+        }
+    }
+
+    @Test
+    public void itShouldApplyMatchAsStream() {
+        Map<String, Set<String>> expected = getMatchedKeys(matchService.applyMatchByDocId(getGeneratedDocuments("A", 400)));
+
+        // The first matches are emitted before all the documents are read
+        AtomicInteger read = new AtomicInteger();
+        Iterator<Match<Document>> iterator = new MatchService().applyMatchAsStream(getGeneratedDocuments("A", 400).stream()
+                .peek(document -> read.incrementAndGet())).iterator();
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertTrue(read.get() < 400);
+        Map<String, List<Match<Document>>> result = new HashMap<>();
+        iterator.forEachRemaining(match -> result.computeIfAbsent(match.getData().getKey(), key -> new ArrayList<>()).add(match));
+        Assert.assertEquals(expected, getMatchedKeys(result));
+
+        Map<String, List<Match<Document>>> sinkResult = new HashMap<>();
+        new MatchService().applyMatch(getGeneratedDocuments("A", 400).stream(),
+                match -> sinkResult.computeIfAbsent(match.getData().getKey(), key -> new ArrayList<>()).add(match));
+        Assert.assertEquals(expected, getMatchedKeys(sinkResult));
+
+        MatchService probeOnlyService = new MatchService(new MatchOptions.Builder().setProbeOnly(true).createMatchOptions());
+        Map<String, Set<String>> expectedProbes = getMatchedKeys(
+                probeOnlyService.applyMatchByDocId(getGeneratedDocuments("S", 200), getGeneratedDocuments("R", 300)));
+        Assert.assertEquals(expectedProbes, getMatchedKeys(probeOnlyService
+                .applyMatchAsStream(getGeneratedDocuments("S", 200).stream(), getGeneratedDocuments("R", 300))
+                .collect(Collectors.groupingBy(match -> match.getData().getKey()))));
+    }
+
+    @Test
+    public void itShouldApplyMatchWithPublisher() throws Exception {
+        MatchService probeOnlyService = new MatchService(new MatchOptions.Builder().setProbeOnly(true).createMatchOptions());
+        Map<String, Set<String>> expected = getMatchedKeys(
+                probeOnlyService.applyMatchByDocId(getGeneratedDocuments("S", 200), getGeneratedDocuments("R", 300)));
+
+        Map<String, List<Match<Document>>> result = new ConcurrentHashMap<>();
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        try (SubmissionPublisher<Document> documents = new SubmissionPublisher<>()) {
+            probeOnlyService.applyMatch(documents, getGeneratedDocuments("R", 300)).subscribe(new Flow.Subscriber<Match<Document>>() {
+                private Flow.Subscription subscription;
+
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onNext(Match<Document> match) {
+                    result.computeIfAbsent(match.getData().getKey(), key -> new ArrayList<>()).add(match);
+                    subscription.request(1);
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    completed.completeExceptionally(throwable);
+                }
+
+                @Override
+                public void onComplete() {
+                    completed.complete(null);
+                }
+            });
+            getGeneratedDocuments("S", 200).forEach(documents::submit);
+        }
+        completed.get(30, TimeUnit.SECONDS);
+        Assert.assertEquals(expected, getMatchedKeys(result));
+    }
+
+    @Test
+    public void itShouldApplyMatchByPairs() {
+        Map<String, Set<String>> expected = getMatchedKeys(matchService.applyMatchByDocId(getGeneratedDocuments("A", 400)));
+
+        List<Match<Document>> pairs = new MatchService().applyMatchByPairs(getGeneratedDocuments("A", 400));
+        Assert.assertEquals(expected.values().stream().mapToInt(Set::size).sum(), pairs.size() * 2);
+        Map<String, List<Match<Document>>> result = pairs.stream()
+                .flatMap(match -> Stream.of(match, match.reversed()))
+                .collect(Collectors.groupingBy(match -> match.getData().getKey()));
+        Assert.assertEquals(expected, getMatchedKeys(result));
+    }
+
     public static Stream<Element> getOrderedElements(Set<Element> elements) {
         List<Element> l = elements.stream()
                 .sorted(Comparator.comparing(ele -> ele.getElementClassification().getElementType()))
@@ -622,6 +1010,46 @@ public class MatchServiceTest {
         Assert.assertEquals(2, result.size());
     }
 
+    @Test
+    public void itShouldApplySameMatchWithUpperBoundPruning() throws FileNotFoundException {
+        // Below the unmatched child score the document candidates are never pruned, so the threshold only filters
+        Map<String, List<Match<Document>>> unpruned = matchService.applyMatchByDocId(getBigDataDocuments(0.0));
+        MatchIndex matchIndex = new MatchIndex(getBigDataDocuments(0.0));
+        Map<Document, List<Match<Document>>> unprunedProbes = matchIndex.match(getBigDataDocuments(0.0));
+        for (double threshold : new double[]{0.5, 0.7, 0.8, 0.9}) {
+            Map<String, Set<String>> expected = getMatchedKeysAbove(unpruned.values(), threshold);
+            Assert.assertFalse(expected.isEmpty());
+            Assert.assertEquals(expected, getMatchedKeysAbove(
+                    matchService.applyMatchByDocId(getBigDataDocuments(threshold)).values(), 0.0));
+
+            Map<String, Set<String>> expectedProbes = getMatchedKeysAbove(unprunedProbes.values(), threshold);
+            Assert.assertEquals(expectedProbes, getMatchedKeysAbove(
+                    matchIndex.match(getBigDataDocuments(threshold)).values(), 0.0));
+        }
+    }
+
+    @Test
+    public void itShouldApplyMatchWithEditDistance() {
+        List<String> accounts = Arrays.asList("ACC-100234", "ACC-100243", "ACC-100235", "ACC-999999");
+        Function<Integer, List<Document>> documents = maxEditDistance -> IntStream.range(0, accounts.size())
+                .mapToObj(i -> new Document.Builder(String.valueOf(i + 1))
+                        .addElement(new Element.Builder<String>().setType(TEXT).setValue(accounts.get(i))
+                                .setMatchType(MatchType.EDIT_DISTANCE).setMaxEditDistance(maxEditDistance)
+                                .createElement())
+                        .createDocument())
+                .collect(Collectors.toList());
+
+        Map<String, List<Match<Document>>> result1 = matchService.applyMatchByDocId(documents.apply(1));
+        Assert.assertEquals(2, result1.size());
+        Assert.assertEquals("3", result1.get("1").get(0).getMatchedWith().getKey());
+        Assert.assertEquals("1", result1.get("3").get(0).getMatchedWith().getKey());
+
+        Map<String, List<Match<Document>>> result2 = matchService.applyMatchByDocId(documents.apply(2));
+        Assert.assertEquals(3, result2.size());
+        Assert.assertFalse(result2.containsKey("4"));
+        result2.values().forEach(matches -> Assert.assertEquals(2, matches.size()));
+    }
+
     @Test
     public void itShouldApplyMatchWithAge() {
         List<Object> numbers = Arrays.asList(1, 2, 9, 10, 11, 45, 49, 50, 52, 55, 90, 95, 100, 107, 115);
@@ -675,6 +1103,93 @@ public class MatchServiceTest {
         }).collect(Collectors.toList());
     }
 
+    private List<Document> getGeneratedDocuments(String keyPrefix, int count) {
+        String[] firstNames = {"Steven", "Stephen", "John", "Jon", "Amy", "Jane", "Michael"};
+        String[] lastNames = {"Wilson", "Wilkson", "Doe", "Dow", "Wane", "Smith", "Smyth", "Parker", "Park", "Brown", "Browne"};
+        return IntStream.range(0, count).mapToObj(i -> new Document.Builder(keyPrefix + i)
+                .addElement(new Element.Builder<String>().setType(NAME)
+                        .setValue(firstNames[i % firstNames.length] + " " + lastNames[(i / 3) % lastNames.length]).createElement())
+                .addElement(new Element.Builder<String>().setType(PHONE).setValue("21222322" + (i % 50)).createElement())
+                .createDocument())
+                .collect(Collectors.toList());
+    }
+
+    private List<Document> getBlockedDocuments(int count) {
+        List<Document> generated = getGeneratedDocuments("A", count);
+        return IntStream.range(0, count).mapToObj(i -> {
+            Document.Builder builder = new Document.Builder(generated.get(i).getKey()).addBlockingKey("T" + i % 3);
+            generated.get(i).getElements().forEach(element -> builder.addElement(
+                    new Element.Builder<>().setType(element.getElementClassification().getElementType())
+                            .setValue(element.getValue()).createElement()));
+            return builder.createDocument();
+        }).collect(Collectors.toList());
+    }
+
+    private List<Document> getDuplicatedDocuments(String keyPrefix, int count) {
+        List<Document> generated = getGeneratedDocuments(keyPrefix, 60);
+        return IntStream.range(0, count).mapToObj(i -> {
+            Document.Builder builder = new Document.Builder(keyPrefix + i);
+            generated.get(i % generated.size()).getElements().forEach(element -> builder.addElement(
+                    new Element.Builder<>().setType(element.getElementClassification().getElementType())
+                            .setValue(element.getValue()).createElement()));
+            return builder.createDocument();
+        }).collect(Collectors.toList());
+    }
+
+    private Map<String, Map<String, Double>> getMatchedScores(Map<String, List<Match<Document>>> result) {
+        return result.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().stream()
+                .collect(Collectors.toMap(match -> match.getMatchedWith().getKey(), Match::getResult))));
+    }
+
+    private void assertSameScores(Map<String, Map<String, Double>> expected, Map<String, Map<String, Double>> actual) {
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected.keySet(), actual.keySet());
+        expected.forEach((key, scores) -> {
+            Assert.assertEquals(scores.keySet(), actual.get(key).keySet());
+            scores.forEach((matchedKey, score) -> Assert.assertEquals(score, actual.get(key).get(matchedKey), 0.000001));
+        });
+    }
+
+    private List<Document> getEmailDocuments() throws FileNotFoundException {
+        AtomicInteger index = new AtomicInteger();
+        return StreamSupport.stream(getCSVReader("Sample-Big-Data.csv").spliterator(), false).limit(1500)
+                .map(csv -> new Document.Builder(index.incrementAndGet() + "")
+                        .addElement(new Element.Builder().setType(EMAIL).setValue(csv[6]).createElement())
+                        .createDocument())
+                .collect(Collectors.toList());
+    }
+
+    private List<Document> getBigDataDocuments(double threshold) throws FileNotFoundException {
+        AtomicInteger index = new AtomicInteger();
+        return StreamSupport.stream(getCSVReader("Sample-Big-Data.csv").spliterator(), false).limit(1500)
+                .map(csv -> new Document.Builder(index.incrementAndGet() + "").setThreshold(threshold)
+                        .addElement(new Element.Builder().setType(NAME).setValue(csv[0]).setWeight(2.0).createElement())
+                        .addElement(new Element.Builder().setType(ADDRESS).setValue(MatchServicePerfTest.getAddress(csv)).createElement())
+                        .addElement(new Element.Builder().setType(PHONE).setValue(csv[5]).createElement())
+                        .addElement(new Element.Builder().setType(EMAIL).setValue(csv[6]).createElement())
+                        .createDocument())
+                .collect(Collectors.toList());
+    }
+
+    private Map<String, Set<String>> getMatchedKeysAbove(Collection<List<Match<Document>>> result, double threshold) {
+        return result.stream().flatMap(List::stream)
+                .filter(match -> match.getResult() > threshold)
+                .collect(Collectors.groupingBy(match -> match.getData().getKey(),
+                        Collectors.mapping(match -> match.getMatchedWith().getKey(), Collectors.toSet())));
+    }
+
+    private Map<String, Set<String>> getMatchedDocumentKeys(Map<String, List<Match<Document>>> result) {
+        return result.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().stream()
+                .map(match -> match.getMatchedWith().getKey())
+                .collect(Collectors.toSet())));
+    }
+
+    private Map<String, Set<String>> getMatchedKeys(Map<String, List<Match<Document>>> result) {
+        return result.entrySet().stream().collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().stream()
+                .map(match -> match.getMatchedWith().getKey() + ":" + match.getResult())
+                .collect(Collectors.toSet())));
+    }
+
     private Date getDate(String val) {
         DateFormat df = new SimpleDateFormat("MM/dd/yyyy");
         try {
@@ -0,0 +1,67 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.Token;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.intuit.fuzzymatcher.domain.ElementType.EMAIL;
+
+public class MinHashTest {
+
+    @Test
+    public void itShouldGetSameBandKeysForSameTokens() {
+        MinHash minHash = new MinHash(8, 3);
+        List<Token> tokens = getTokens("james.parker@gmail.com");
+        List<Token> shuffled = new ArrayList<>(getTokens("james.parker@yahoo.com"));
+        Collections.reverse(shuffled);
+
+        long[] bandKeys = minHash.getBandKeys(tokens);
+        Assert.assertEquals(8, bandKeys.length);
+        Assert.assertArrayEquals(bandKeys, minHash.getBandKeys(shuffled));
+        Assert.assertArrayEquals(bandKeys, new MinHash(8, 3).getBandKeys(tokens));
+        Assert.assertEquals(0, minHash.getBandKeys(Collections.emptyList()).length);
+    }
+
+    @Test
+    public void itShouldShareBandsWithSimilarTokensOnly() {
+        MinHash minHash = new MinHash(20, 2);
+        long[] bandKeys = minHash.getBandKeys(getTokens("jparker@gmail.com"));
+        Assert.assertTrue(countShared(bandKeys, minHash.getBandKeys(getTokens("j.parker@gmail.com"))) > 0);
+        Assert.assertEquals(0, countShared(bandKeys, minHash.getBandKeys(getTokens("wilkson@gmail.com"))));
+    }
+
+    @Test
+    public void itShouldGetCollisionProbability() {
+        MinHash minHash = new MinHash(20, 5);
+        Assert.assertEquals(1.0, minHash.getCollisionProbability(1.0), 0.0);
+        Assert.assertEquals(0.0, minHash.getCollisionProbability(0.0), 0.0);
+        Assert.assertEquals(1 - Math.pow(1 - Math.pow(0.5, 5), 20), minHash.getCollisionProbability(0.5), 1e-12);
+        Assert.assertTrue(minHash.getCollisionProbability(0.8) > 0.99);
+        Assert.assertTrue(minHash.getCollisionProbability(0.3) < 0.05);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void itShouldNotAllowZeroBands() {
+        new MinHash(0, 4);
+    }
+
+    private int countShared(long[] bandKeys, long[] otherBandKeys) {
+        int shared = 0;
+        for (int band = 0; band < bandKeys.length; band++) {
+            if (bandKeys[band] == otherBandKeys[band]) {
+                shared++;
+            }
+        }
+        return shared;
+    }
+
+    private List<Token> getTokens(String email) {
+        Element element = new Element.Builder().setType(EMAIL).setValue(email).createElement();
+        return element.getTokens();
+    }
+}
@@ -0,0 +1,84 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.exception.MatchException;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.function.Function;
+
+public class NumericRangeIndexTest {
+
+    private final Random random = new Random(11);
+
+    @Test
+    public void itShouldMatchTreeRangeForIntegers() {
+        assertSameAsTreeRange(i -> random.nextInt(2000) - 1000, 0.9, null);
+        assertSameAsTreeRange(i -> random.nextInt(120), 0.9, 10D);
+    }
+
+    @Test
+    public void itShouldMatchTreeRangeForDoubles() {
+        assertSameAsTreeRange(i -> (random.nextDouble() - 0.5) * 1000, 0.95, null);
+    }
+
+    @Test
+    public void itShouldMatchTreeRangeForDates() {
+        assertSameAsTreeRange(i -> new Date((random.nextLong() % 3000000000000L)), 0.99, 15777e7D);
+    }
+
+    @Test
+    public void itShouldPassMultiValuedElementsOnce() {
+        NumericRangeIndex numericRangeIndex = new NumericRangeIndex();
+        numericRangeIndex.setMultiValued();
+        numericRangeIndex.put(100, 0);
+        numericRangeIndex.put(101, 0);
+        numericRangeIndex.put(105, 1);
+
+        List<Integer> ordinals = new ArrayList<>();
+        numericRangeIndex.forEach(102, 0.9, null, ordinals::add);
+        ordinals.sort(Comparator.naturalOrder());
+        Assert.assertEquals(Arrays.asList(0, 1), ordinals);
+    }
+
+    @Test(expected = MatchException.class)
+    public void itShouldNotMixIntegralAndFloatingPointValues() {
+        NumericRangeIndex numericRangeIndex = new NumericRangeIndex();
+        numericRangeIndex.put(100, 0);
+        numericRangeIndex.put(100.5, 1);
+    }
+
+    private void assertSameAsTreeRange(Function<Integer, Object> valueSupplier, double pct, Double pctOf) {
+        NumericRangeIndex numericRangeIndex = new NumericRangeIndex();
+        TreeMap<Object, Set<Integer>> tree = new TreeMap<>();
+        for (int ordinal = 0; ordinal < 500; ordinal++) {
+            Object value = valueSupplier.apply(ordinal);
+            numericRangeIndex.put(value, ordinal);
+            tree.computeIfAbsent(value, v -> new HashSet<>()).add(ordinal);
+
+            Object probe = valueSupplier.apply(ordinal);
+            Set<Integer> actual = new HashSet<>();
+            numericRangeIndex.forEach(probe, pct, pctOf, actual::add);
+            Assert.assertEquals(treeRange(tree, probe, pct, pctOf), actual);
+        }
+    }
+
+    private Set<Integer> treeRange(TreeMap<Object, Set<Integer>> tree, Object value, double pct, Double pctOf) {
+        double number = value instanceof Date ? ((Date) value).getTime() : ((Number) value).doubleValue();
+        double range = Math.abs((pctOf != null ? pctOf : number) * (1.0 - pct));
+        Object lower, higher;
+        if (value instanceof Integer) {
+            lower = (int) (number - range);
+            higher = (int) (number + range);
+        } else if (value instanceof Date) {
+            lower = new Date((long) (number - range));
+            higher = new Date((long) (number + range));
+        } else {
+            lower = number - range;
+            higher = number + range;
+        }
+        Set<Integer> result = new HashSet<>();
+        tree.subMap(lower, true, higher, true).values().forEach(result::addAll);
+        return result;
+    }
+}
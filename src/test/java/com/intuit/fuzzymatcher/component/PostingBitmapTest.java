@@ -0,0 +1,43 @@
+package com.intuit.fuzzymatcher.component;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+public class PostingBitmapTest {
+
+    @Test
+    public void itShouldIterateOrdinalsInOrder() {
+        PostingBitmap postingBitmap = new PostingBitmap(new int[]{5, 3, 70000, 1}, 4);
+        postingBitmap.add(3);
+        postingBitmap.add(65536);
+
+        List<Integer> ordinals = new ArrayList<>();
+        postingBitmap.forEach(ordinals::add);
+        Assert.assertEquals(List.of(1, 3, 5, 65536, 70000), ordinals);
+        Assert.assertEquals(5, postingBitmap.size());
+        Assert.assertTrue(postingBitmap.contains(65536));
+        Assert.assertFalse(postingBitmap.contains(65537));
+    }
+
+    @Test
+    public void itShouldConvertDenseChunksToBitmap() {
+        Random random = new Random(7);
+        TreeSet<Integer> expected = new TreeSet<>();
+        PostingBitmap postingBitmap = new PostingBitmap();
+        for (int i = 0; i < 50000; i++) {
+            int ordinal = random.nextInt(200000);
+            expected.add(ordinal);
+            postingBitmap.add(ordinal);
+        }
+
+        List<Integer> ordinals = new ArrayList<>();
+        postingBitmap.forEach(ordinals::add);
+        Assert.assertEquals(new ArrayList<>(expected), ordinals);
+        Assert.assertEquals(expected.size(), postingBitmap.size());
+    }
+}
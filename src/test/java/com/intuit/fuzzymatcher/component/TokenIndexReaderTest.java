@@ -0,0 +1,187 @@
+package com.intuit.fuzzymatcher.component;
+
+import com.intuit.fuzzymatcher.domain.Document;
+import com.intuit.fuzzymatcher.domain.Element;
+import com.intuit.fuzzymatcher.domain.Match;
+import com.intuit.fuzzymatcher.domain.Token;
+import com.intuit.fuzzymatcher.function.TokenizerFunction;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.intuit.fuzzymatcher.domain.ElementType.*;
+
+public class TokenIndexReaderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void itShouldMatchSameAfterSaveAndLoad() throws IOException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+        Path path = temporaryFolder.newFile().toPath();
+        matchIndex.save(path);
+        MatchIndex loadedIndex = MatchIndex.load(path);
+
+        List<Document> documents = Arrays.asList(
+                getDocument("Probe1", "john doe", "546 freeman ave dallas tx 75024", "john@doe.com"),
+                getDocument("Probe2", "Stephen Wilkson", "45th Ave 5th Street", "steve@wilkson.com"),
+                getDocument("Probe3", "James Parker", "123 new st. Minneapolis MN", "jparker@gmail.com"));
+        Map<String, Set<String>> expected = getMatchedKeys(matchIndex.match(documents));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, getMatchedKeys(loadedIndex.match(documents)));
+    }
+
+    @Test
+    public void itShouldLoadSameTokensAsBuiltRepo() throws IOException {
+        List<Document> documents = new MatchServiceTest().getTestDocuments();
+        MatchOptions matchOptions = new MatchOptions.Builder().setBitmapCutoff(2).createMatchOptions();
+        TokenRepo tokenRepo = new TokenRepo(matchOptions);
+        documents.forEach(document -> document.getPreProcessedElement().forEach(tokenRepo::put));
+
+        Path path = temporaryFolder.newFile().toPath();
+        MatchIndex.write(tokenRepo.getDocuments(), path);
+        TokenRepo loadedRepo = TokenIndexReader.read(path, matchOptions);
+
+        Assert.assertEquals(tokenRepo.size(), loadedRepo.size());
+        for (int ordinal = 0; ordinal < tokenRepo.size(); ordinal++) {
+            Element element = tokenRepo.getElement(ordinal);
+            Element loadedElement = loadedRepo.getElement(ordinal);
+            Assert.assertEquals(element.getDocument().getKey(), loadedElement.getDocument().getKey());
+            Assert.assertEquals(element.getPreProcessedValue(), loadedElement.getPreProcessedValue());
+            Assert.assertEquals(tokenRepo.getTokenCount(ordinal), loadedRepo.getTokenCount(ordinal));
+            for (Object tokenObject : element.getTokens()) {
+                Token token = (Token) tokenObject;
+                Assert.assertEquals(tokenRepo.getDocumentFrequency(token), loadedRepo.getDocumentFrequency(token));
+                Assert.assertEquals(getOrdinals(tokenRepo, token), getOrdinals(loadedRepo, token));
+            }
+        }
+    }
+
+    @Test
+    public void itShouldLoadNearestNeighbors() throws IOException {
+        List<Document> documents = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            documents.add(new Document.Builder("" + i)
+                    .addElement(new Element.Builder<Integer>().setType(NUMBER).setValue(1000 + i * 7).createElement())
+                    .addElement(new Element.Builder<Date>().setType(DATE).setValue(new Date(86400000L * i)).createElement())
+                    .createDocument());
+        }
+        MatchIndex matchIndex = new MatchIndex(documents);
+        Path path = temporaryFolder.newFile().toPath();
+        matchIndex.save(path);
+        MatchIndex loadedIndex = MatchIndex.load(path);
+
+        List<Document> probes = Collections.singletonList(new Document.Builder("Probe1")
+                .addElement(new Element.Builder<Integer>().setType(NUMBER).setValue(1100).createElement())
+                .addElement(new Element.Builder<Date>().setType(DATE).setValue(new Date(86400000L * 15)).createElement())
+                .createDocument());
+        Map<String, Set<String>> expected = getMatchedKeys(matchIndex.match(probes));
+        Assert.assertFalse(expected.isEmpty());
+        Assert.assertEquals(expected, getMatchedKeys(loadedIndex.match(probes)));
+        loadedIndex.rebuild();
+        Assert.assertEquals(expected, getMatchedKeys(loadedIndex.match(probes)));
+    }
+
+    @Test
+    public void itShouldKeepCustomTokensAfterLoad() throws IOException {
+        MatchIndex matchIndex = new MatchIndex(Arrays.asList(getValueTokenDocument("1", "James Parker"),
+                getValueTokenDocument("2", "James Smith")));
+        Path path = temporaryFolder.newFile().toPath();
+        matchIndex.save(path);
+
+        List<Document> probes = Collections.singletonList(getValueTokenDocument("Probe1", "James Parker"));
+        Map<String, Set<String>> expected = Collections.singletonMap("Probe1", Collections.singleton("1:1.0"));
+        Assert.assertEquals(expected, getMatchedKeys(matchIndex.match(probes)));
+
+        MatchIndex minHashIndex = MatchIndex.load(path, new MatchOptions.Builder().setMinHash(NAME, 8, 1)
+                .createMatchOptions());
+        Assert.assertEquals(expected, getMatchedKeys(minHashIndex.match(probes)));
+
+        MatchIndex loadedIndex = MatchIndex.load(path);
+        loadedIndex.rebuild();
+        Assert.assertEquals(expected, getMatchedKeys(loadedIndex.match(probes)));
+        Path savedPath = temporaryFolder.newFile().toPath();
+        loadedIndex.save(savedPath);
+        Assert.assertEquals(expected, getMatchedKeys(MatchIndex.load(savedPath).match(probes)));
+    }
+
+    @Test
+    public void itShouldOpenSavedIndex() throws IOException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+        Path path = temporaryFolder.newFile().toPath();
+        matchIndex.save(path);
+
+        List<Document> documents = Collections.singletonList(
+                getDocument("Probe1", "john doe", "546 freeman ave dallas tx 75024", "john@doe.com"));
+        Assert.assertEquals(getMatchedKeys(matchIndex.match(documents)), getMatchedKeys(MatchIndex.open(path).match(documents)));
+    }
+
+    @Test
+    public void itShouldLoadBlockingKeys() throws IOException {
+        MatchIndex matchIndex = new MatchIndex(Arrays.asList(
+                new Document.Builder("1").addBlockingKey("US").addBlockingKey("Tenant1")
+                        .addElement(new Element.Builder().setType(NAME).setValue("James Parker").createElement())
+                        .createDocument(),
+                new Document.Builder("2")
+                        .addElement(new Element.Builder().setType(NAME).setValue("James Parker").createElement())
+                        .createDocument()));
+        Path path = temporaryFolder.newFile().toPath();
+        matchIndex.save(path);
+
+        List<Document> documents = MatchIndex.load(path).getTokenRepo().getDocuments().collect(Collectors.toList());
+        Assert.assertEquals(new TreeSet<>(Arrays.asList("Tenant1", "US")), documents.get(0).getBlockingKeys());
+        Assert.assertTrue(documents.get(1).getBlockingKeys().isEmpty());
+
+        Document probe = new Document.Builder("Probe1").addBlockingKey("Tenant1")
+                .addElement(new Element.Builder().setType(NAME).setValue("James Parker").createElement())
+                .createDocument();
+        Assert.assertEquals(Collections.singletonMap("Probe1", Collections.singleton("1:1.0")),
+                getMatchedKeys(MatchIndex.open(path).match(Collections.singletonList(probe))));
+    }
+
+    @Test(expected = IOException.class)
+    public void itShouldFailForTruncatedFile() throws IOException {
+        MatchIndex matchIndex = new MatchIndex(new MatchServiceTest().getTestDocuments());
+        Path path = temporaryFolder.newFile().toPath();
+        matchIndex.save(path);
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(bytes, bytes.length / 2));
+        MatchIndex.load(path);
+    }
+
+    private List<Integer> getOrdinals(TokenRepo tokenRepo, Token token) {
+        List<Integer> ordinals = new ArrayList<>();
+        tokenRepo.forEach(token, ordinals::add);
+        Collections.sort(ordinals);
+        return ordinals;
+    }
+
+    private Map<String, Set<String>> getMatchedKeys(Map<Document, List<Match<Document>>> result) {
+        return result.entrySet().stream().collect(Collectors.toMap(entry -> entry.getKey().getKey(), entry -> entry.getValue().stream()
+                .map(match -> match.getMatchedWith().getKey() + ":" + match.getResult())
+                .collect(Collectors.toSet())));
+    }
+
+    private Document getValueTokenDocument(String key, String name) {
+        return new Document.Builder(key)
+                .addElement(new Element.Builder().setType(NAME).setValue(name)
+                        .setTokenizerFunction(TokenizerFunction.valueTokenizer()).createElement())
+                .createDocument();
+    }
+
+    private Document getDocument(String key, String name, String address, String email) {
+        return new Document.Builder(key)
+                .addElement(new Element.Builder().setType(NAME).setValue(name).createElement())
+                .addElement(new Element.Builder().setType(ADDRESS).setValue(address).createElement())
+                .addElement(new Element.Builder().setType(EMAIL).setValue(email).createElement())
+                .createDocument();
+    }
+}
@@ -9,10 +9,16 @@ import org.junit.Test;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
@@ -47,6 +53,247 @@ public class TokenRepoTest {
         Assert.assertTrue(matchingElements2.contains(elements.get(1)));
     }
 
+    @Test
+    public void shouldGetOrdinalsForElements() {
+        List<Object> names = Arrays.asList("Amy Doe", "Brian Doe", "Jane Amy", "Michael Wane");
+
+        List<Element> elements = getElements(names, ElementType.NAME, null);
+
+        TokenRepo tokenRepo = new TokenRepo();
+        elements.forEach(element -> tokenRepo.put(element));
+        Assert.assertEquals(4, tokenRepo.size());
+
+        Element<String> testElement = new Element.Builder<String>().setType(ElementType.NAME).setValue("Doe").createElement();
+        List<Element> matchingElements = new ArrayList<>();
+        tokenRepo.forEach(testElement.getTokens().get(0), ordinal -> matchingElements.add(tokenRepo.getElement(ordinal)));
+        Assert.assertEquals(Arrays.asList(elements.get(0), elements.get(1)), matchingElements);
+
+        Element<String> missingElement = new Element.Builder<String>().setType(ElementType.NAME).setValue("Xavier").createElement();
+        Assert.assertNull(tokenRepo.get(missingElement.getTokens().get(0)));
+    }
+
+    @Test
+    public void shouldGetForCompressedPostings() {
+        List<Object> names = Arrays.asList("Amy Doe", "Brian Doe", "Jane Doe", "Michael Doe", "Doe");
+
+        List<Element> elements = getElements(names, ElementType.NAME, null);
+
+        TokenRepo tokenRepo = new TokenRepo(new MatchOptions.Builder().setBitmapCutoff(2).createMatchOptions());
+        elements.forEach(element -> tokenRepo.put(element));
+
+        Element<String> testElement = new Element.Builder<String>().setType(ElementType.NAME).setValue("Doe").createElement();
+        Set<Element> matchingElements = tokenRepo.get(testElement.getTokens().get(0));
+        Assert.assertEquals(5, matchingElements.size());
+        Assert.assertTrue(matchingElements.containsAll(elements));
+    }
+
+    @Test
+    public void shouldFindSimilarElementsWithMinHash() {
+        List<Object> emails = Arrays.asList("jparker@gmail.com", "j.parker@gmail.com", "wilkson@gmail.com", "jparker@yahoo.com");
+
+        List<Element> elements = getElements(emails, ElementType.EMAIL, null);
+
+        TokenRepo tokenRepo = new TokenRepo(new MatchOptions.Builder()
+                .setMinHash(ElementType.EMAIL, 20, 2).createMatchOptions());
+        elements.forEach(element -> tokenRepo.put(element));
+
+        Assert.assertTrue(tokenRepo.forEachSimilar(elements.get(0), ordinal -> {
+        }));
+        Assert.assertEquals(Arrays.asList(0, 1, 3), getSimilarOrdinals(tokenRepo, elements.get(0)));
+
+        tokenRepo.remove(1);
+        Assert.assertEquals(Arrays.asList(0, 3), getSimilarOrdinals(tokenRepo, elements.get(0)));
+        tokenRepo.compact();
+        Assert.assertEquals(Arrays.asList(0, 3), getSimilarOrdinals(tokenRepo, elements.get(0)));
+
+        Element<String> name = getElement("James Parker", ElementType.NAME, null);
+        Assert.assertFalse(tokenRepo.forEachSimilar(name, ordinal -> {
+        }));
+    }
+
+    @Test
+    public void shouldSkipRemovedElements() {
+        List<Object> names = Arrays.asList("Amy Doe", "Brian Doe", "Jane Doe", "Michael Doe", "Doe");
+
+        List<Element> elements = getElements(names, ElementType.NAME, null);
+
+        TokenRepo tokenRepo = new TokenRepo(new MatchOptions.Builder().setBitmapCutoff(2).createMatchOptions());
+        elements.forEach(element -> tokenRepo.put(element));
+        Token doe = (Token) elements.get(4).getTokens().get(0);
+        Token amy = (Token) elements.get(0).getTokens().get(0);
+
+        Assert.assertTrue(tokenRepo.remove(0));
+        Assert.assertTrue(tokenRepo.remove(2));
+        Assert.assertFalse(tokenRepo.remove(2));
+        Assert.assertEquals(2, tokenRepo.getPendingRemovals());
+        Assert.assertEquals(Arrays.asList(elements.get(1), elements.get(3), elements.get(4)), getOrdinals(tokenRepo, doe)
+                .stream().map(tokenRepo::getElement).collect(Collectors.toList()));
+        Assert.assertTrue(getOrdinals(tokenRepo, amy).isEmpty());
+        Assert.assertEquals(5, tokenRepo.getDocumentFrequency(doe));
+
+        tokenRepo.compact();
+        Assert.assertEquals(0, tokenRepo.getPendingRemovals());
+        Assert.assertEquals(Arrays.asList(1, 3, 4), getOrdinals(tokenRepo, doe));
+        Assert.assertEquals(3, tokenRepo.getDocumentFrequency(doe));
+        Assert.assertEquals(0, tokenRepo.getDocumentFrequency(amy));
+        Assert.assertNull(tokenRepo.getElement(0));
+        Assert.assertEquals(elements.get(1), tokenRepo.getElement(1));
+        Assert.assertEquals(5, tokenRepo.size());
+
+        Element<String> newElement = getElement("Amy Doe", ElementType.NAME, null);
+        tokenRepo.put(newElement);
+        Assert.assertEquals(Arrays.asList(1, 3, 4, 5), getOrdinals(tokenRepo, doe));
+        Assert.assertEquals(Collections.singletonList(5), getOrdinals(tokenRepo, amy));
+    }
+
+    @Test
+    public void shouldCompactRemovedNearestNeighbors() {
+        List<Object> numbers = Arrays.asList(100, 200, 1, 25, 700, 99, 210, 500);
+
+        List<Element> elements = getElements(numbers, ElementType.NUMBER, null);
+
+        TokenRepo tokenRepo = new TokenRepo();
+        elements.forEach(element -> tokenRepo.put(element));
+        Token token = (Token) getElement(101, ElementType.NUMBER, null).getTokens().get(0);
+        Assert.assertEquals(Arrays.asList(0, 5), getOrdinals(tokenRepo, token));
+
+        tokenRepo.remove(5);
+        Assert.assertEquals(Collections.singletonList(0), getOrdinals(tokenRepo, token));
+        tokenRepo.compact();
+        Assert.assertEquals(Collections.singletonList(0), getOrdinals(tokenRepo, token));
+        Assert.assertNull(tokenRepo.getElement(5));
+    }
+
+    @Test
+    public void shouldSkipStopTokens() {
+        List<Object> names = Arrays.asList("Amy Doe", "Brian Doe", "Jane Doe", "Michael Doe", "Amy Wane");
+        List<Element> elements = getElements(names, ElementType.NAME, null);
+
+        Element<String> doe = new Element.Builder<String>().setType(ElementType.NAME).setValue("Doe").createElement();
+        Element<String> amy = new Element.Builder<String>().setType(ElementType.NAME).setValue("Amy").createElement();
+
+        TokenRepo absoluteCapRepo = new TokenRepo(new MatchOptions.Builder()
+                .setStopTokenPolicy(StopTokenPolicy.absoluteCap(2)).createMatchOptions());
+        elements.forEach(element -> absoluteCapRepo.put(element));
+        Assert.assertEquals(4, absoluteCapRepo.getDocumentFrequency(doe.getTokens().get(0)));
+        Assert.assertTrue(absoluteCapRepo.isStopToken(doe.getTokens().get(0)));
+        Assert.assertFalse(absoluteCapRepo.isStopToken(amy.getTokens().get(0)));
+
+        TokenRepo percentileRepo = new TokenRepo(new MatchOptions.Builder()
+                .setStopTokenPolicy(StopTokenPolicy.percentile(0.8)).createMatchOptions());
+        elements.forEach(element -> percentileRepo.put(element));
+        Assert.assertTrue(percentileRepo.isStopToken(doe.getTokens().get(0)));
+        Assert.assertFalse(percentileRepo.isStopToken(amy.getTokens().get(0)));
+
+        // idf of Doe is log(5/4) and Amy is log(5/2)
+        TokenRepo idfRepo = new TokenRepo(new MatchOptions.Builder()
+                .setStopTokenPolicy(StopTokenPolicy.idfFloor(0.5)).createMatchOptions());
+        elements.forEach(element -> idfRepo.put(element));
+        Assert.assertTrue(idfRepo.isStopToken(doe.getTokens().get(0)));
+        Assert.assertFalse(idfRepo.isStopToken(amy.getTokens().get(0)));
+
+        TokenRepo defaultRepo = new TokenRepo();
+        elements.forEach(element -> defaultRepo.put(element));
+        Assert.assertFalse(defaultRepo.isStopToken(doe.getTokens().get(0)));
+    }
+
+    @Test
+    public void shouldPutElementsConcurrently() throws Exception {
+        List<Object> names = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            names.add("Name" + (i % 50) + " Doe" + (i % 3) + " Unique" + i);
+        }
+        List<Element> elements = getElements(names, ElementType.TEXT, null);
+
+        TokenRepo tokenRepo = new TokenRepo(new MatchOptions.Builder().setBitmapCutoff(8).createMatchOptions());
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int from = t * 500;
+                futures.add(executor.submit(() -> elements.subList(from, from + 500).forEach(tokenRepo::put)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(2000, tokenRepo.size());
+        for (int i = 0; i < 2000; i++) {
+            Element element = elements.get(i);
+            for (Object token : element.getTokens()) {
+                Assert.assertTrue(tokenRepo.get((Token) token).contains(element));
+            }
+        }
+        Element<String> doe = new Element.Builder<String>().setType(ElementType.TEXT).setValue("Doe0").createElement();
+        Assert.assertEquals(667, tokenRepo.getDocumentFrequency(doe.getTokens().get(0)));
+    }
+
+    @Test
+    public void shouldPutAndGetConcurrentlyWithNearestNeighbor() throws Exception {
+        List<Object> numbers = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            numbers.add(1000 + i * 10);
+        }
+        List<Element> elements = getElements(numbers, ElementType.NUMBER, null);
+
+        TokenRepo tokenRepo = new TokenRepo();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int from = t * 500;
+                futures.add(executor.submit(() -> elements.subList(from, from + 500).forEach(element -> {
+                    tokenRepo.put(element);
+                    Assert.assertTrue(tokenRepo.get((Token) element.getTokens().get(0)).contains(element));
+                })));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(2000, tokenRepo.size());
+        for (Element element : elements) {
+            Assert.assertTrue(tokenRepo.get((Token) element.getTokens().get(0)).contains(element));
+        }
+    }
+
+    @Test
+    public void shouldPutMultiValuedElementsConcurrentlyWithNearestNeighbor() throws Exception {
+        List<Element> elements = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            Element element = getElement(1000 + i * 10, ElementType.NUMBER, null);
+            element.setTokens(Arrays.asList(new Token<>(1000 + i * 10, element), new Token<>(1001 + i * 10, element)));
+            elements.add(element);
+        }
+
+        TokenRepo tokenRepo = new TokenRepo();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int from = t * 500;
+                futures.add(executor.submit(() -> elements.subList(from, from + 500).forEach(tokenRepo::put)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        Assert.assertEquals(2000, tokenRepo.size());
+        for (Element element : elements) {
+            List<Integer> ordinals = getOrdinals(tokenRepo, (Token) element.getTokens().get(0));
+            Assert.assertEquals(new TreeSet<>(ordinals).size(), ordinals.size());
+        }
+    }
+
     @Test
     public void shouldGetForNumberWithNearestNeighbor() {
         List<Object> numbers = Arrays.asList(100, 200, 1, 25, 700, 99, 210, 500);
@@ -191,6 +438,19 @@ public class TokenRepoTest {
         Assert.assertTrue(matchingElements1.contains(elements.get(1)));
     }
 
+    private List<Integer> getSimilarOrdinals(TokenRepo tokenRepo, Element element) {
+        Set<Integer> ordinals = new TreeSet<>();
+        tokenRepo.forEachSimilar(element, ordinals::add);
+        return new ArrayList<>(ordinals);
+    }
+
+    private List<Integer> getOrdinals(TokenRepo tokenRepo, Token token) {
+        List<Integer> ordinals = new ArrayList<>();
+        tokenRepo.forEach(token, ordinals::add);
+        Collections.sort(ordinals);
+        return ordinals;
+    }
+
     private List<Element> getElements(List<Object> values, ElementType elementType, MatchType matchType) {
         return values.stream()
                 .map(value -> getElement(value, elementType, matchType)).collect(Collectors.toList());
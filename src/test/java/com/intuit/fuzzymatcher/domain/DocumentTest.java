@@ -104,4 +104,60 @@ public class DocumentTest {
         Assert.assertEquals(3, d1.getChildCount(d2));
         Assert.assertEquals(1, d1.getUnmatchedChildCount(d2));
     }
+
+    @Test
+    public void itShouldGetChildCountWithVarianceAndRepeatedClassifications() {
+        Document d1 = new Document.Builder("1")
+                .addElement(new Element.Builder().setType(NAME).setValue("James Parker").createElement())
+                .addElement(new Element.Builder().setType(NAME).setVariance("alias").setValue("Jim Parker").createElement())
+                .addElement(new Element.Builder().setType(EMAIL).setValue("parker@email.com").createElement())
+                .createDocument();
+        Document d2 = new Document.Builder("2")
+                .addElement(new Element.Builder().setType(NAME).setValue("James Parker").createElement())
+                .addElement(new Element.Builder().setType(PHONE).setValue("123-123-1234").createElement())
+                .createDocument();
+        Document d3 = new Document.Builder("3")
+                .addElement(new Element.Builder().setType(NAME).setValue("James Parker").createElement())
+                .addElement(new Element.Builder().setType(PHONE).setValue("123-123-1234").createElement())
+                .addElement(new Element.Builder().setType(PHONE).setValue("321-321-4321").createElement())
+                .createDocument();
+
+        Assert.assertEquals(4, d1.getChildCount(d2));
+        Assert.assertEquals(4, d2.getChildCount(d1));
+        Assert.assertEquals(3, d1.getUnmatchedChildCount(d2));
+        Assert.assertEquals(3, d2.getUnmatchedChildCount(d1));
+
+        // PHONE is held twice by d3, so it counts twice in the union, and once in the disjunction with d2
+        Assert.assertEquals(3, d2.getChildCount(d3));
+        Assert.assertEquals(1, d3.getUnmatchedChildCount(d2));
+        Assert.assertEquals(5, d1.getChildCount(d3));
+        Assert.assertEquals(4, d3.getUnmatchedChildCount(d1));
+    }
+
+    @Test
+    public void itShouldGetChildCountAfterManyClassifications() {
+        for (int i = 0; i < 100; i++) {
+            new ElementClassification(NAME, "many" + i).getId();
+        }
+        Document d1 = new Document.Builder("1")
+                .addElement(new Element.Builder().setType(NAME).setVariance("late").setValue("James Parker").createElement())
+                .addElement(new Element.Builder().setType(EMAIL).setVariance("late").setValue("parker@email.com").createElement())
+                .createDocument();
+        Document d2 = new Document.Builder("2")
+                .addElement(new Element.Builder().setType(NAME).setVariance("late").setValue("James Parker").createElement())
+                .addElement(new Element.Builder().setType(PHONE).setVariance("late").setValue("123-123-1234").createElement())
+                .createDocument();
+        Document d3 = new Document.Builder("3")
+                .addElement(new Element.Builder().setType(NAME).setValue("James Parker").createElement())
+                .addElement(new Element.Builder().setType(PHONE).setVariance("late").setValue("123-123-1234").createElement())
+                .createDocument();
+
+        Assert.assertEquals(3, d1.getChildCount(d2));
+        Assert.assertEquals(2, d2.getUnmatchedChildCount(d1));
+        // d3 holds an ElementClassification interned long before the others, which does not fit in a mask with them
+        Assert.assertEquals(3, d2.getChildCount(d3));
+        Assert.assertEquals(2, d3.getUnmatchedChildCount(d2));
+        Assert.assertEquals(4, d1.getChildCount(d3));
+        Assert.assertEquals(4, d1.getUnmatchedChildCount(d3));
+    }
 }